@@ -1,19 +1,39 @@
 package projectLabo;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import projectLabo.parser.DfaTokenizer;
+import projectLabo.parser.ParallelTokenizer;
 import projectLabo.parser.Parser;
 import projectLabo.parser.ParserException;
-import projectLabo.parser.Tokenizer;
+import projectLabo.parser.TokenizerInterface;
+import projectLabo.parser.ast.NodeFactory;
+import projectLabo.parser.ast.NodePool;
 import projectLabo.parser.ast.Prog;
+import projectLabo.visitors.bytecode.GenerateBytecode;
+import projectLabo.visitors.bytecode.VirtualMachine;
+import projectLabo.visitors.codegen.JvmBackend;
+import projectLabo.visitors.execution.Compile;
+import projectLabo.visitors.execution.DictValue;
 import projectLabo.visitors.execution.Execute;
+import projectLabo.visitors.execution.Interner;
 import projectLabo.visitors.execution.InterpreterException;
+import projectLabo.visitors.execution.TypedExecute;
+import projectLabo.visitors.optimization.Hoist;
+import projectLabo.visitors.optimization.Optimize;
+import projectLabo.visitors.resolution.Resolve;
 import projectLabo.visitors.typechecking.Typecheck;
 import projectLabo.visitors.typechecking.TypecheckerException;
 
@@ -23,6 +43,21 @@ public class Main {
 	private static final String INPUT_OPT = "-i";
 	private static final String OUTPUT_OPT = "-o";
 	private static final String NO_TYPE_CHECK = "-ntc";
+	private static final String ENGINE_OPT = "-e";
+	private static final String PARALLEL_OPT = "-par";
+	private static final String HASH_CONSING_OPT = "-hc";
+	private static final String OFF_HEAP_OPT = "-offheap";
+	private static final String COMPACT_OPT = "-compact";
+	private static final String WATCH_OPT = "-watch";
+	private static final String PARALLEL_LEXING_OPT = "-parlex";
+	private static final long WATCH_QUIET = 100; // milliseconds without events after a change of the watched file
+
+	// available execution engines, selected with option -e
+	private static final String VISITOR_ENGINE = "visitor"; // default, AST walked by the Execute visitor
+	private static final String CLOSURE_ENGINE = "closure"; // AST compiled once into a tree of closures
+	private static final String JVM_ENGINE = "jvm"; // typechecked program compiled into a JVM class, Execute otherwise
+	private static final String VM_ENGINE = "vm"; // AST compiled into bytecode run by a stack-based virtual machine
+	private static final List<String> engines = List.of(VISITOR_ENGINE, CLOSURE_ENGINE, JVM_ENGINE, VM_ENGINE);
 
 	/*
 	 * maps options to their string values, if any options with no argument are
@@ -34,6 +69,13 @@ public class Main {
 		options.put(INPUT_OPT, new String[1]); // one argument, initially null
 		options.put(OUTPUT_OPT, new String[1]); // one argument, initially null
 		options.put(NO_TYPE_CHECK, null); // no arguments
+		options.put(ENGINE_OPT, new String[] { VISITOR_ENGINE }); // one argument, visitor engine by default
+		options.put(PARALLEL_OPT, null); // no arguments
+		options.put(HASH_CONSING_OPT, null); // no arguments
+		options.put(OFF_HEAP_OPT, new String[1]); // one argument, initially null
+		options.put(COMPACT_OPT, null); // no arguments
+		options.put(WATCH_OPT, null); // no arguments
+		options.put(PARALLEL_LEXING_OPT, null); // no arguments
 	}
 
 	// manage generic option errors
@@ -47,7 +89,7 @@ public class Main {
 		for (var i = 0; i < args.length; i++) {
 			var opt = args[i];
 			if (!options.containsKey(opt))
-				error("Main.java - Option error.\nValid options:\n\t-i <input>\n\t-o <output>\n\t-ntc");
+				error("Main.java - Option error.\nValid options:\n\t-i <input>\n\t-o <output>\n\t-ntc\n\t-e <engine>\n\t-par\n\t-hc\n\t-offheap <size>\n\t-compact\n\t-watch\n\t-parlex");
 			var val = options.get(opt);
 			if (val == null) // set option with no argument (flag)
 				options.put(opt, new String[0]);
@@ -62,9 +104,74 @@ public class Main {
 
 	// end of utility methods for option processing
 
-	// opens the input stream, standard input if -i option is null
-	private static BufferedReader tryOpenInput(String inputPath) throws FileNotFoundException {
-		return new BufferedReader(inputPath == null ? new InputStreamReader(System.in) : new FileReader(inputPath));
+	// checks the engine selected with option -e before any input is read
+	private static String checkedEngine() {
+		var engine = options.get(ENGINE_OPT)[0];
+		if (!engines.contains(engine))
+			error("Main.java - Unknown engine " + engine + ".\nValid engines: " + String.join(", ", engines));
+		return engine;
+	}
+
+	/*
+	 * with option -offheap, dictionaries with at least <size> entries, all ints or all bools, are stored
+	 * outside the heap, where the garbage collector does not scan them; by default they stay on the heap
+	 */
+	private static void setOffHeapThreshold() {
+		var size = options.get(OFF_HEAP_OPT)[0];
+		if (size == null)
+			return;
+		try {
+			DictValue.setOffHeapThreshold(Integer.parseInt(size));
+		} catch (NumberFormatException e) {
+			error("Main.java - Invalid size " + size + " for option " + OFF_HEAP_OPT);
+		}
+	}
+
+	/*
+	 * executes the program with the selected engine; 'typecheck' is null if type checking is disabled,
+	 * in that case the JVM engine falls back to Execute
+	 */
+	private static void execute(Prog prog, String engine, Typecheck typecheck, PrintWriter pw) {
+		switch (engine) {
+		case CLOSURE_ENGINE -> new Compile(pw).compile(prog).run();
+		case VM_ENGINE -> new VirtualMachine(pw).run(GenerateBytecode.generate(prog));
+		case JVM_ENGINE -> {
+			var compiled = typecheck == null ? null : JvmBackend.compile(prog, typecheck);
+			if (compiled != null)
+				compiled.run(pw);
+			else
+				interpret(prog, typecheck, pw);
+		}
+		default -> interpret(prog, typecheck, pw);
+		}
+	}
+
+	/*
+	 * visits the program, without dynamic type checks if it has been typechecked; with option -par
+	 * the 'for' loops that do not assign outer variables run in parallel on large dictionaries; with
+	 * option -hc equal pairs and small dictionaries are shared, and the hit rate is reported on stderr
+	 */
+	private static void interpret(Prog prog, Typecheck typecheck, PrintWriter pw) {
+		var execute = typecheck == null ? new Execute(pw) : new TypedExecute(pw, typecheck);
+		execute.setParallel(options.get(PARALLEL_OPT) != null);
+		var interner = options.get(HASH_CONSING_OPT) != null ? new Interner() : null;
+		execute.setInterner(interner);
+		try {
+			prog.accept(execute);
+		} finally {
+			if (interner != null)
+				System.err.println(interner.report());
+		}
+	}
+
+	/*
+	 * opens the tokenizer of the input file, memory-mapped, or of the standard input if -i option is null;
+	 * with option -parlex the input file is split into chunks of lines scanned in parallel
+	 */
+	private static TokenizerInterface tryOpenInput(String inputPath) throws IOException {
+		if (inputPath == null)
+			return new DfaTokenizer(System.in);
+		return options.get(PARALLEL_LEXING_OPT) != null ? ParallelTokenizer.open(inputPath) : DfaTokenizer.open(inputPath);
 	}
 
 	// opens the output stream, standard output if -o option is null
@@ -72,16 +179,123 @@ public class Main {
 		return outputPath == null ? new PrintWriter(System.out) : new PrintWriter(outputPath);
 	}
 
+	/*
+	 * optimizes and executes a program that has been resolved and, if 'typechecking' is true,
+	 * typechecked without errors
+	 */
+	private static void run(Prog prog, String engine, boolean typechecking, PrintWriter pw) {
+		Typecheck typecheck = null;
+		if (typechecking)
+			prog = (Prog) prog.accept(new Optimize()); // only typechecked programs can be optimized
+		prog = (Prog) prog.accept(new Hoist()); // invariant expressions of loops are evaluated once per loop
+		if (typechecking)
+			prog.accept(typecheck = new Typecheck()); // static types of the transformed program
+		execute(prog, engine, typecheck, pw);
+	}
+
+	/*
+	 * with option -watch the input file is executed again each time it changes, until the process
+	 * is killed; only the statements that changed are parsed and typechecked again, see WatchedProgram,
+	 * and the errors are reported without exiting; the statistics of each update go to stderr
+	 *
+	 * the program is executed as checked by WatchedProgram, with the types it has recorded: Optimize
+	 * and Hoist would build new nodes, which would have to be typechecked again as a whole
+	 *
+	 * an editor may save the file by truncating it and then writing it, with an event for each step:
+	 * the events are collected until the file has been quiet for WATCH_QUIET milliseconds, and an
+	 * empty, missing or unchanged file is not executed again, since it is most likely being written
+	 */
+	private static void watch(String inputPath, String engine, boolean typechecking, PrintWriter pw)
+			throws IOException, InterruptedException {
+		var path = Path.of(inputPath).toAbsolutePath();
+		var program = new WatchedProgram(typechecking);
+		try (var service = path.getFileSystem().newWatchService()) {
+			path.getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY); // files cannot be watched, only directories
+			var source = Files.readAllBytes(path);
+			while (true) {
+				try {
+					var prog = program.update(source);
+					System.err.println(program.report());
+					execute(prog, engine, program.types(), pw);
+				} catch (ParserException e) {
+					System.err.println("Syntax error: " + e.getMessage());
+				} catch (TypecheckerException e) {
+					System.err.println(program.report());
+					System.err.println("Static error: " + e.getMessage());
+				} catch (InterpreterException e) {
+					System.err.println("Dynamic error: " + e.getMessage());
+				}
+				pw.flush();
+				var previous = source;
+				do {
+					waitForChange(service, path);
+					source = readIfExists(path);
+				} while (source.length == 0 || Arrays.equals(source, previous));
+			}
+		}
+	}
+
+	// the contents of the file 'path', empty if it does not exist, for instance while it is replaced by a new one
+	private static byte[] readIfExists(Path path) throws IOException {
+		try {
+			return Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			return new byte[0];
+		}
+	}
+
+	// waits for an event of the file 'path', then for WATCH_QUIET milliseconds without events of it
+	private static void waitForChange(WatchService service, Path path) throws InterruptedException {
+		var key = service.take();
+		while (true) {
+			var changed = key.pollEvents().stream().anyMatch(event -> path.getFileName().equals(event.context()));
+			key.reset();
+			if (changed)
+				break;
+			key = service.take();
+		}
+		while ((key = service.poll(WATCH_QUIET, TimeUnit.MILLISECONDS)) != null) {
+			key.pollEvents();
+			key.reset();
+		}
+	}
+
 	public static void main(String[] args) {
 		processArgs(args);
-		try (var rd = tryOpenInput(options.get(INPUT_OPT)[0]);
-				var tokenizer = new Tokenizer(rd);
-				var parser = new Parser(tokenizer);
+		var engine = checkedEngine();
+		setOffHeapThreshold();
+		var typechecking = options.get(NO_TYPE_CHECK) == null;
+		var inputPath = options.get(INPUT_OPT)[0];
+		if (options.get(WATCH_OPT) != null) {
+			if (inputPath == null)
+				error("Main.java - Option " + WATCH_OPT + " requires option " + INPUT_OPT);
+			try (var pw = tryOpenOutput(options.get(OUTPUT_OPT)[0])) {
+				watch(inputPath, engine, typechecking, pw);
+			} catch (IOException e) {
+				error("I/O error: " + e.getMessage());
+			} catch (InterruptedException e) {
+				error("Interrupted.");
+			}
+			return;
+		}
+		var compact = options.get(COMPACT_OPT) != null;
+		try (var tokenizer = tryOpenInput(inputPath);
+				var parser = new Parser(tokenizer, compact ? new NodePool() : NodeFactory.TREE);
 				var pw = tryOpenOutput(options.get(OUTPUT_OPT)[0])) {
 			Prog prog = parser.parseProg();
-			if (options.get(NO_TYPE_CHECK) == null)
-				prog.accept(new Typecheck());
-			prog.accept(new Execute(pw));
+			prog.accept(new Resolve()); // static coordinates of variables, used by both environments
+			if (typechecking)
+				prog.accept(new Typecheck(false)); // the types are not needed, only the errors
+			/*
+			 * with option -compact the program is executed as built by the parser, in the compact form of
+			 * NodePool: Optimize and Hoist would build the whole tree of objects, and the JVM engine and
+			 * TypedExecute need the types of the nodes, recorded by identity, while each visit of the compact
+			 * form builds new objects; the other engines visit the compact form, the visitor with Execute
+			 */
+			if (!compact)
+				run(prog, engine, typechecking, pw);
+			else
+				execute(prog, engine.equals(JVM_ENGINE) ? VISITOR_ENGINE : engine, null, pw);
 		} catch (IOException e) {
 			error("I/O error: " + e.getMessage());
 		} catch (ParserException e) {
@@ -0,0 +1,310 @@
+package projectLabo;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import static projectLabo.parser.TokenType.*;
+import projectLabo.parser.DfaTokenizer;
+import projectLabo.parser.Parser;
+import projectLabo.parser.ParserException;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.LangProg;
+import projectLabo.parser.ast.NodeFactory;
+import projectLabo.parser.ast.Prog;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtList;
+import projectLabo.parser.ast.Symbols;
+import projectLabo.parser.ast.VarStmt;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.resolution.Resolve;
+import projectLabo.visitors.typechecking.Type;
+import projectLabo.visitors.typechecking.Typecheck;
+import projectLabo.visitors.typechecking.TypecheckerException;
+
+/*
+ * program kept in memory by the -watch mode of Main, as a list of top-level statements; when the
+ * file changes, only the statements that overlap the changed bytes are tokenized and parsed again
+ *
+ * resolution and typechecking restart from the first changed statement, after declaring the
+ * variables of the statements before it; they stop after the changed statements if these declare
+ * the same variables with the same types as before, since the static environment of the following
+ * statements has not changed
+ *
+ * the types of the expressions are recorded statement by statement, so the program can be executed
+ * by the engines that need them without typechecking it again
+ *
+ * if the changed statements cannot be parsed on their own (for instance when a block is closed
+ * by another statement) the whole file is parsed again, which also gives the right line numbers
+ * in the error messages
+ */
+final class WatchedProgram {
+
+	// parsed top-level statements, with the offsets of their first tokens
+	private record Region(List<Stmt> stmts, int[] starts) {
+	}
+
+	private final boolean typechecking;
+	private final Symbols symbols = new Symbols(); // shared by all the versions, unchanged variables keep their ids
+	private byte[] source; // contents of the file, null if the program has not been parsed
+	private final ArrayList<Stmt> stmts = new ArrayList<>();
+	private int[] starts = new int[0]; // offset in 'source' of the first token of each statement
+	private final ArrayList<Variable> declared = new ArrayList<>(); // variable declared by each statement, if any
+	private final ArrayList<Type> types = new ArrayList<>(); // type of the declared variable, if typechecked
+	private final ArrayList<IdentityHashMap<Exp, Type>> expTypes = new ArrayList<>(); // of the expressions of each statement, if typechecked
+	private final IdentityHashMap<Exp, Type> allTypes = new IdentityHashMap<>(); // of the expressions of all the statements
+	private int checked; // number of statements, from the first one, resolved and typechecked without errors
+	private int parsed; // statements parsed by the last update
+	private int visited; // statements resolved and typechecked by the last update
+
+	WatchedProgram(boolean typechecking) {
+		this.typechecking = typechecking;
+	}
+
+	// the types of the expressions of the program returned by the last update, null without typechecking
+	Typecheck types() {
+		return typechecking ? new Typecheck(allTypes) : null;
+	}
+
+	// statistics of the last update
+	String report() {
+		return String.format("Watch: parsed %d, typechecked %d of %d statements", parsed, visited, stmts.size());
+	}
+
+	/*
+	 * updates the program to the new contents of the file and returns it, resolved and typechecked;
+	 * after an error the next update starts again from the statements that could not be checked
+	 */
+	Prog update(byte[] newSource) throws ParserException {
+		parsed = visited = 0;
+		if (source == null)
+			reparse(newSource);
+		else {
+			var prefix = Arrays.mismatch(source, newSource); // length of the common prefix, -1 if equal
+			if (prefix < 0)
+				check(stmts.size(), stmts.size() - 1, 0, List.of(), List.of(), checked);
+			else
+				reparse(newSource, prefix);
+		}
+		return new LangProg(new StmtList(stmts));
+	}
+
+	// parses the whole file
+	private void reparse(byte[] newSource) throws ParserException {
+		source = null; // the program is not valid until the parsing succeeds
+		stmts.clear();
+		declared.clear();
+		types.clear();
+		expTypes.clear();
+		allTypes.clear();
+		starts = new int[0];
+		checked = 0;
+		var stmts = parse(newSource, 0, newSource.length); // parsed first, for the same errors as Main
+		var region = new Region(stmts, split(newSource, 0, newSource.length));
+		replace(newSource, 0, -1, region);
+	}
+
+	// parses the statements that overlap the bytes after the common prefix, or the whole file if needed
+	private void reparse(byte[] newSource, int prefix) throws ParserException {
+		var suffix = 0; // length of the common suffix, not overlapping the prefix
+		var max = Math.min(source.length, newSource.length) - prefix;
+		while (suffix < max && source[source.length - 1 - suffix] == newSource[newSource.length - 1 - suffix])
+			suffix++;
+		var first = stmtAt(prefix - 1); // the last token before the change may be extended by it
+		var last = stmtAt(source.length - suffix);
+		var from = first == 0 ? 0 : starts[first];
+		var to = last == stmts.size() - 1 ? newSource.length : starts[last + 1] + newSource.length - source.length;
+		var region = parseRegion(newSource, from, to, last == stmts.size() - 1);
+		if (region == null)
+			reparse(newSource);
+		else
+			replace(newSource, first, last, region);
+	}
+
+	// index of the statement whose bytes include offset 'pos', from its first token to the first token of the next one
+	private int stmtAt(int pos) {
+		var i = Arrays.binarySearch(starts, pos);
+		return Math.max(0, i >= 0 ? i : -i - 2);
+	}
+
+	/*
+	 * parses the statements in bytes [from, to), which must be followed by a separator unless they
+	 * are at the end of the file; null if they cannot be parsed on their own
+	 */
+	private Region parseRegion(byte[] bytes, int from, int to, boolean atEnd) {
+		try {
+			var starts = split(bytes, from, to);
+			var end = to;
+			if (!atEnd) { // the last starting offset is the one of the separator
+				if (starts.length == 0 || starts[starts.length - 1] >= 0)
+					return null;
+				end = -1 - starts[starts.length - 1];
+				starts = Arrays.copyOf(starts, starts.length - 1);
+			}
+			var stmts = parse(bytes, from, end);
+			return stmts.size() == starts.length ? new Region(stmts, starts) : null;
+		} catch (ParserException e) {
+			return null;
+		}
+	}
+
+	// a byte array stream does not need to be closed
+	private static DfaTokenizer tokenizer(byte[] bytes, int from, int to) {
+		return new DfaTokenizer(new ByteArrayInputStream(bytes, from, to - from));
+	}
+
+	private List<Stmt> parse(byte[] bytes, int from, int to) throws ParserException {
+		return new Parser(tokenizer(bytes, from, to), NodeFactory.TREE, symbols).parseStmts();
+	}
+
+	/*
+	 * offsets of the first tokens of the top-level statements in bytes [from, to), which are separated
+	 * by STMT_SEP outside blocks; if the bytes end with a separator, its offset is added as -1 - offset
+	 */
+	private static int[] split(byte[] bytes, int from, int to) throws ParserException {
+		var offsets = new int[16];
+		var count = 0;
+		var depth = 0;
+		var separator = -1; // offset of the separator before the next statement, -1 at the beginning
+		var starting = true; // true if the next token starts a statement
+		var tokenizer = tokenizer(bytes, from, to);
+		for (var type = tokenizer.next(); type != EOF; type = tokenizer.next()) {
+			if (starting) {
+				if (count == offsets.length)
+					offsets = Arrays.copyOf(offsets, 2 * count);
+				offsets[count++] = from + (int) tokenizer.tokenOffset();
+				starting = false;
+			}
+			if (type == OPEN_BLOCK)
+				depth++;
+			else if (type == CLOSE_BLOCK)
+				depth--;
+			else if (type == STMT_SEP && depth == 0) {
+				separator = from + (int) tokenizer.tokenOffset();
+				starting = true;
+			}
+		}
+		offsets = Arrays.copyOf(offsets, count + (starting && separator >= 0 ? 1 : 0));
+		if (count < offsets.length)
+			offsets[count] = -1 - separator;
+		return offsets;
+	}
+
+	// replaces statements first..last with those of 'region', then resolves and typechecks the program
+	private void replace(byte[] newSource, int first, int last, Region region) {
+		var count = region.stmts().size();
+		parsed = count;
+		var oldDeclared = new ArrayList<Variable>();
+		var oldTypes = new ArrayList<Type>();
+		for (var i = first; i <= last; i++)
+			if (declared.get(i) != null) {
+				oldDeclared.add(declared.get(i));
+				oldTypes.add(types.get(i));
+			}
+		stmts.subList(first, last + 1).clear();
+		stmts.addAll(first, region.stmts());
+		declared.subList(first, last + 1).clear();
+		declared.addAll(first, Collections.nCopies(count, null));
+		types.subList(first, last + 1).clear();
+		types.addAll(first, Collections.nCopies(count, null));
+		for (var i = first; i <= last; i++)
+			forgetTypes(i);
+		expTypes.subList(first, last + 1).clear();
+		expTypes.addAll(first, Collections.nCopies(count, null));
+		var shift = newSource.length - (source == null ? 0 : source.length);
+		var newStarts = new int[starts.length - (last + 1 - first) + count];
+		System.arraycopy(starts, 0, newStarts, 0, first);
+		System.arraycopy(region.starts(), 0, newStarts, first, count);
+		for (var i = last + 1; i < starts.length; i++)
+			newStarts[i - (last + 1) + first + count] = starts[i] + shift;
+		starts = newStarts;
+		source = newSource;
+		check(first, last, count, oldDeclared, oldTypes, checked);
+	}
+
+	/*
+	 * resolves and typechecks the program after statements first..last of the previous version have been
+	 * replaced by 'count' statements, which declared 'oldDeclared' with 'oldTypes'; the previous
+	 * version had 'oldChecked' statements checked without errors
+	 */
+	private void check(int first, int last, int count, List<Variable> oldDeclared, List<Type> oldTypes, int oldChecked) {
+		var shift = count - (last + 1 - first);
+		var end = first + count; // first statement after the new ones
+		var i = Math.min(first, oldChecked);
+		var resolve = new Resolve();
+		var typecheck = typechecking ? new Typecheck(false) : null;
+		declare(resolve, typecheck, 0, i);
+		checked = i;
+		while (i < stmts.size()) {
+			if (i == end && oldChecked > last && sameDeclarations(first, end, oldDeclared, oldTypes)) {
+				var unchanged = Math.min(stmts.size(), oldChecked + shift); // same static environment as before
+				declare(resolve, typecheck, i, unchanged);
+				checked = i = unchanged;
+				if (i == stmts.size())
+					break;
+			}
+			var stmt = stmts.get(i);
+			stmt.accept(resolve);
+			visited++;
+			if (typecheck != null) {
+				var stmtTypes = new IdentityHashMap<Exp, Type>();
+				typecheck.checkStmt(stmt, stmtTypes);
+				forgetTypes(i);
+				expTypes.set(i, stmtTypes);
+				allTypes.putAll(stmtTypes);
+			}
+			var var = stmt instanceof VarStmt varStmt ? varStmt.getVar() : null;
+			declared.set(i, var);
+			types.set(i, var != null && typecheck != null ? typecheck.lookup(var) : null);
+			checked = ++i;
+		}
+	}
+
+	// removes the types of the expressions of statement i, if any
+	private void forgetTypes(int i) {
+		var stmtTypes = expTypes.get(i);
+		if (stmtTypes != null)
+			allTypes.keySet().removeAll(stmtTypes.keySet());
+	}
+
+	// declares the variables of statements from..to-1, which have already been checked
+	private void declare(Resolve resolve, Typecheck typecheck, int from, int to) {
+		for (var i = from; i < to; i++) {
+			var var = declared.get(i);
+			if (var != null) {
+				resolve.declare(var);
+				if (typecheck != null)
+					typecheck.declare(var, types.get(i));
+			}
+		}
+	}
+
+	// true if statements from..to-1 declare the variables 'oldDeclared' with types 'oldTypes', in the same order
+	private boolean sameDeclarations(int from, int to, List<Variable> oldDeclared, List<Type> oldTypes) {
+		var n = 0;
+		for (var i = from; i < to; i++) {
+			var var = declared.get(i);
+			if (var == null)
+				continue;
+			if (n == oldDeclared.size() || !var.name().equals(oldDeclared.get(n).name())
+					|| !sameType(types.get(i), oldTypes.get(n)))
+				return false;
+			n++;
+		}
+		return n == oldDeclared.size();
+	}
+
+	private static boolean sameType(Type type, Type other) {
+		if (type == null || other == null)
+			return type == other;
+		try {
+			type.checkEqual(other);
+			other.checkEqual(type);
+			return true;
+		} catch (TypecheckerException e) {
+			return false;
+		}
+	}
+}
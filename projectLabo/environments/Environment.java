@@ -1,21 +1,35 @@
 package projectLabo.environments;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.Arrays;
 import static java.util.Objects.requireNonNull;
 import projectLabo.parser.ast.NamedElement;
 
+/*
+ * environment indexed by the ids of the symbol table: 'values[id]' is the innermost declaration of
+ * 'id', the declarations it hides are saved by the level that hides them and restored when the level
+ * is exited; every operation is an array access, and no static coordinates are needed as in FrameEnvironment
+ */
 public class Environment<T> implements EnvironmentInterface<T> {
 
-	private final LinkedList<HashMap<NamedElement, T>> levelList = new LinkedList<>(); // list of single level declarations
- 
+	private Object[] values = new Object[16]; // innermost declaration of each id, null if there is none
+	private int[] levels = new int[16]; // level of the innermost declaration of each id
+	private int top = -1; // innermost level
+
+	/* declarations hidden by each level, with their ids and levels, restored when the level is exited */
+	private int[] hiddenIds = new int[16];
+	private int[] hiddenLevels = new int[16];
+	private Object[] hiddenValues = new Object[16];
+	private int hiddenCount;
+	private int[] firstHidden = new int[16]; // index in the hidden declarations of the first one of each level
+
 	/*
 	 * enter a new nested level; private method shared by 'enterLevel()' and the
 	 * constructor 'Environment()'
 	 */
 	private void addEmptyLevel() {
-		levelList.addFirst(new HashMap<>());
+		if (++top == firstHidden.length)
+			firstHidden = Arrays.copyOf(firstHidden, 2 * top);
+		firstHidden[top] = hiddenCount;
 	}
 
 	/* create an environment with just one empty level */
@@ -30,56 +44,70 @@ public class Environment<T> implements EnvironmentInterface<T> {
 
 	@Override
 	public void exitLevel() {
-		levelList.removeFirst();
+		while (hiddenCount > firstHidden[top]) {
+			var id = hiddenIds[--hiddenCount];
+			values[id] = hiddenValues[hiddenCount];
+			levels[id] = hiddenLevels[hiddenCount];
+			hiddenValues[hiddenCount] = null;
+		}
+		top--;
 	}
 
 	/*
-	 * looks up the innermost level where 'namedEl' is found;
+	 * returns the id of 'namedEl' if it is declared at some level;
 	 * throws an 'EnvironmentException' if 'namedEl' could not be found at any level
 	 */
-
-	protected Map<NamedElement, T> resolve(NamedElement namedEl) {
-		for (var level : levelList)
-			if (level.containsKey(namedEl))
-				return level;
-		throw new EnvironmentException("Enviroment.java - Undeclared " + namedEl);
+	private int resolve(NamedElement namedEl) {
+		var id = namedEl.id();
+		if (id >= values.length || values[id] == null)
+			throw new EnvironmentException("Enviroment.java - Undeclared " + namedEl);
+		return id;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public T lookup(NamedElement namedEl) {
-		return resolve(namedEl).get(namedEl);
-	}
-
-	/*
-	 * updates map to associate 'namedEl' with 'info'; 'namedEl' and 'info' must be non-null
-	 */
-
-	private static <T> T updateLevel(Map<NamedElement, T> map, NamedElement namedEl, T info) {
-		return map.put(requireNonNull(namedEl), requireNonNull(info));
+		return (T) values[resolve(namedEl)];
 	}
 
 	/*
 	 * updates the innermost level by associating 'namedEl' with 'info'; 'namedEl' is not allowed
 	 * to be already defined, 'namedEl' and 'info' must be non-null
 	 */
-
 	@Override
 	public T dec(NamedElement namedEl, T info) {
-		var level = levelList.getFirst();
-		if (level.containsKey(namedEl))
-			throw new EnvironmentException("Enviroment.java -  "+ namedEl + " already declared");
-		return updateLevel(level, namedEl, info);
+		requireNonNull(info);
+		var id = namedEl.id();
+		if (id >= values.length) {
+			values = Arrays.copyOf(values, Math.max(id + 1, 2 * values.length));
+			levels = Arrays.copyOf(levels, values.length);
+		}
+		if (values[id] != null && levels[id] == top)
+			throw new EnvironmentException("Enviroment.java -  " + namedEl + " already declared");
+		if (hiddenCount == hiddenIds.length) {
+			hiddenIds = Arrays.copyOf(hiddenIds, 2 * hiddenCount);
+			hiddenLevels = Arrays.copyOf(hiddenLevels, 2 * hiddenCount);
+			hiddenValues = Arrays.copyOf(hiddenValues, 2 * hiddenCount);
+		}
+		hiddenIds[hiddenCount] = id;
+		hiddenLevels[hiddenCount] = levels[id];
+		hiddenValues[hiddenCount++] = values[id]; // null if 'namedEl' was not declared
+		values[id] = info;
+		levels[id] = top;
+		return null;
 	}
 
 	/*
 	 * updates the 'info' of 'namedEl' found at the innermost level, throws an 'EnvironmentException' if no 'namedEl' can be
 	 * found in the list of levels. Only used for the dynamic semantics
 	 */
-
+	@SuppressWarnings("unchecked")
 	@Override
 	public T update(NamedElement namedEl, T info) {
-		var level = resolve(namedEl);
-		return updateLevel(level, namedEl, info);
+		var id = resolve(namedEl);
+		var previous = (T) values[id];
+		values[id] = requireNonNull(info);
+		return previous;
 	}
 
 }
@@ -0,0 +1,138 @@
+package projectLabo.environments;
+
+import java.util.Arrays;
+import static java.util.Objects.requireNonNull;
+import projectLabo.parser.ast.NamedElement;
+
+/*
+ * environment implemented as a stack of array-backed frames, one for each nested level;
+ * 'namedEl' is located through the static coordinates (depth, slot) assigned by the resolver,
+ * hence every operation is an array access instead of a walk through hash maps
+ */
+public class FrameEnvironment<T> implements EnvironmentInterface<T> {
+
+	private static final int INITIAL_FRAME_SIZE = 4;
+
+	private Object[][] frames = new Object[16][]; // frames[0..top], frames[top] is the innermost level
+	private int[] used = new int[16]; // number of slots possibly in use in each frame
+	private int top = -1;
+
+	/* create an environment with just one empty level */
+	public FrameEnvironment() {
+		addEmptyLevel();
+	}
+
+	/*
+	 * creates an environment sharing the current levels of 'env', used by the workers of parallel 'for' loops;
+	 * the shared levels must only be read, the levels entered by the new environment are its own
+	 */
+	protected FrameEnvironment(FrameEnvironment<T> env) {
+		frames = Arrays.copyOf(env.frames, env.frames.length);
+		Arrays.fill(frames, env.top + 1, frames.length, null); // frames reused by 'env' for its next levels
+		used = env.used.clone();
+		top = env.top;
+	}
+
+	/*
+	 * enter a new nested level; private method shared by 'enterLevel()' and the
+	 * constructor 'FrameEnvironment()'
+	 */
+	private void addEmptyLevel() {
+		if (++top == frames.length) {
+			frames = Arrays.copyOf(frames, 2 * top);
+			used = Arrays.copyOf(used, 2 * top);
+		}
+		if (frames[top] == null)
+			frames[top] = new Object[INITIAL_FRAME_SIZE];
+	}
+
+	@Override
+	public void enterLevel() {
+		addEmptyLevel();
+	}
+
+	/* frames are reused: exiting a level just clears the slots of the innermost frame */
+	@Override
+	public void exitLevel() {
+		Arrays.fill(frames[top], 0, used[top], null);
+		used[top] = 0;
+		top--;
+	}
+
+	private EnvironmentException undeclared(NamedElement namedEl) {
+		return new EnvironmentException("Enviroment.java - Undeclared " + namedEl);
+	}
+
+	/*
+	 * returns the frame where 'namedEl' is declared, according to its static depth; throws
+	 * an 'EnvironmentException' if 'namedEl' could not be found
+	 */
+	private Object[] resolve(NamedElement namedEl) {
+		var depth = namedEl.depth();
+		var slot = namedEl.slot();
+		if (depth < 0 || depth > top)
+			throw undeclared(namedEl);
+		var frame = frames[top - depth];
+		if (slot >= frame.length || frame[slot] == null)
+			throw undeclared(namedEl);
+		return frame;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T lookup(NamedElement namedEl) {
+		return (T) resolve(namedEl)[namedEl.slot()];
+	}
+
+	/*
+	 * updates the innermost level by associating 'namedEl' with 'info'; 'namedEl' is not allowed
+	 * to be already defined, 'namedEl' and 'info' must be non-null
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T dec(NamedElement namedEl, T info) {
+		requireNonNull(info);
+		var slot = namedEl.slot();
+		if (slot < 0)
+			throw new EnvironmentException("Enviroment.java - Unresolved " + namedEl);
+		var frame = frames[top];
+		if (slot >= frame.length)
+			frame = frames[top] = Arrays.copyOf(frame, Math.max(slot + 1, 2 * frame.length));
+		if (frame[slot] != null)
+			throw new EnvironmentException("Enviroment.java -  " + namedEl + " already declared");
+		used[top] = Math.max(used[top], slot + 1);
+		frame[slot] = info;
+		return null;
+	}
+
+	/*
+	 * binds 'namedEl' to 'info' in the innermost level, whether 'namedEl' is already declared or not;
+	 * used for the variable of 'for' loops, which is rebound at every iteration
+	 */
+	public void bind(NamedElement namedEl, T info) {
+		requireNonNull(info);
+		var slot = namedEl.slot();
+		if (slot < 0)
+			throw new EnvironmentException("Enviroment.java - Unresolved " + namedEl);
+		var frame = frames[top];
+		if (slot >= frame.length)
+			frame = frames[top] = Arrays.copyOf(frame, Math.max(slot + 1, 2 * frame.length));
+		used[top] = Math.max(used[top], slot + 1);
+		frame[slot] = info;
+	}
+
+	/*
+	 * updates the 'info' of 'namedEl' found at the level given by its static depth, throws an
+	 * 'EnvironmentException' if 'namedEl' is not declared
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T update(NamedElement namedEl, T info) {
+		var frame = resolve(namedEl);
+		var slot = namedEl.slot();
+		var previous = (T) frame[slot];
+		frame[slot] = requireNonNull(info);
+		return previous;
+	}
+
+}
@@ -0,0 +1,471 @@
+package projectLabo.parser;
+
+import static projectLabo.parser.TokenType.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * hand-coded scanner that recognizes the same lexemes as Tokenizer without regular expressions:
+ * each lexeme is recognized by a deterministic automaton, whose states are the branches of next(),
+ * looking at every byte of the input once; keywords are scanned as identifiers and then looked up in
+ * a perfect hash table, and only identifiers are converted to strings
+ *
+ * tokens, line numbers and error messages are the same as the ones of Tokenizer
+ */
+public class DfaTokenizer implements TokenizerInterface {
+
+	private static final int BUFFER_SIZE = 1 << 16; // initial capacity of the heap buffer
+	private static final int EOS = -1; // end of stream, returned by peek()
+
+	/*
+	 * perfect hash table of keywords: keywordHash gives distinct positions to distinct keywords, so a
+	 * lexeme is a keyword if and only if it is equal to the keyword in the position of its hash
+	 */
+	private static final int KEYWORD_TABLE_SIZE = 32; // power of 2
+	private static final String[] keywords = new String[KEYWORD_TABLE_SIZE];
+	private static final byte[][] keywordBytes = new byte[KEYWORD_TABLE_SIZE][];
+	private static final TokenType[] keywordTypes = new TokenType[KEYWORD_TABLE_SIZE];
+
+	static {
+		addKeyword("else", ELSE);
+		addKeyword("false", BOOL);
+		addKeyword("fst", FST);
+		addKeyword("if", IF);
+		addKeyword("print", PRINT);
+		addKeyword("snd", SND);
+		addKeyword("true", BOOL);
+		addKeyword("var", VAR);
+		addKeyword("for", FOR);
+		addKeyword("of", OF);
+	}
+
+	/*
+	 * the input is scanned as bytes, lexemes are ASCII and the other chars can only appear in comments or in
+	 * unrecognized tokens; a large regular file is memory-mapped, one window of at most WINDOW bytes at a time,
+	 * so it is scanned without copies, any other input is read in blocks into a heap buffer
+	 */
+	private static final int WINDOW = 1 << 30;
+	private static final long MIN_MAPPED_SIZE = 1 << 20; // smaller files are read into the heap buffer
+	private final FileChannel channel; // the mapped file, null if the input is a stream
+	private final long end; // end in the file of the bytes to scan
+	private long offset; // position in the input of the first byte of the window or of the heap buffer
+	private final InputStream stream; // null if the input is a mapped file
+	private byte[] bytes; // the array of the heap buffer
+	private ByteBuffer buffer = ByteBuffer.allocate(0); // the current window or the heap buffer
+	private int start; // start of the lexeme being recognized, the bytes before it can be discarded
+	private int pos; // next byte to be read
+	private int limit; // end of the bytes available in the buffer
+	private int lines; // line terminators read so far
+	private boolean lineEnded = true; // true if no byte has been read or the last one is a line terminator
+
+	/* the most recently recognized token, 'type' is null if there is none */
+	private TokenType type;
+	private String string; // lexeme, computed on demand for numbers
+	private int intValue;
+	private boolean boolValue;
+	private int lineNumber; // line of the token, number of lines of the input for EOF
+
+	/*
+	 * identifiers already recognized, in an open addressing hash table: each identifier is converted to a
+	 * String only the first time, then the same String is returned without allocations
+	 */
+	private byte[][] identBytes = new byte[64][];
+	private String[] identStrings = new String[64];
+	private int[] identHashes = new int[64];
+	private int identCount;
+
+	// scanner of a stream, read in blocks
+	public DfaTokenizer(InputStream stream) {
+		this.stream = stream;
+		this.bytes = new byte[BUFFER_SIZE];
+		this.channel = null;
+		this.end = 0;
+	}
+
+	/*
+	 * scanner of bytes [from, end) of a file, which must start at the beginning of a line; line numbers
+	 * start after 'lines', the number of lines before 'from'
+	 */
+	DfaTokenizer(FileChannel channel, long from, long end, int lines) {
+		this.channel = channel;
+		this.end = end;
+		this.offset = from;
+		this.lines = lines;
+		this.stream = null;
+	}
+
+	/*
+	 * scanner of the file 'path', memory-mapped if it is a regular file (not a pipe or a device) of at least
+	 * MIN_MAPPED_SIZE bytes; mapping a small file costs more than reading it
+	 */
+	public static DfaTokenizer open(String path) throws IOException {
+		var input = new FileInputStream(path);
+		if (!Files.isRegularFile(Path.of(path)) || input.getChannel().size() < MIN_MAPPED_SIZE)
+			return new DfaTokenizer(input);
+		var channel = input.getChannel();
+		return new DfaTokenizer(channel, 0, channel.size(), 0);
+	}
+
+	private static void addKeyword(String keyword, TokenType type) {
+		var chars = keyword.getBytes(StandardCharsets.US_ASCII);
+		var h = keywordHash(chars, 0, chars.length);
+		if (keywords[h] != null)
+			throw new AssertionError("Fatal error: keywords " + keywords[h] + " and " + keyword + " have the same hash");
+		keywords[h] = keyword;
+		keywordBytes[h] = chars;
+		keywordTypes[h] = type;
+	}
+
+	// the first byte, the last one and the length are enough to tell keywords apart
+	private static int keywordHash(byte[] chars, int start, int length) {
+		return chars[start] + 3 * chars[start + length - 1] + length & KEYWORD_TABLE_SIZE - 1;
+	}
+
+	private static int keywordHash(ByteBuffer chars, int start, int length) {
+		return chars.get(start) + 3 * chars.get(start + length - 1) + length & KEYWORD_TABLE_SIZE - 1;
+	}
+
+	// the next byte, which is not consumed, or EOS if the input is over
+	private int peek() throws TokenizerException {
+		return pos < limit || fill() ? buffer.get(pos) & 0xFF : EOS;
+	}
+
+	// makes more bytes available, keeping the lexeme being recognized; false if the input is over
+	private boolean fill() throws TokenizerException {
+		try {
+			if (channel != null) { // the next window starts with the lexeme
+				var from = offset + start;
+				if (from + limit - start >= end)
+					return false;
+				var length = (int) Math.min(Math.max(WINDOW, pos - start + 1L), end - from); // at least one more byte
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+				offset = from;
+				pos -= start;
+				limit = length;
+				start = 0;
+				return true;
+			}
+			if (start > 0) { // the bytes before the lexeme are discarded
+				System.arraycopy(bytes, start, bytes, 0, limit - start);
+				offset += start;
+				pos -= start;
+				limit -= start;
+				start = 0;
+			}
+			if (limit == bytes.length) // the lexeme fills the whole buffer
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			buffer = ByteBuffer.wrap(bytes);
+			int read;
+			do
+				read = stream.read(bytes, limit, bytes.length - limit);
+			while (read == 0);
+			if (read < 0)
+				return false;
+			limit += read;
+			return true;
+		} catch (IOException e) {
+			throw new TokenizerException(e);
+		}
+	}
+
+	private static boolean isLetter(int c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWordChar(int c) { // same as \w in regular expressions
+		return isLetter(c) || isDigit(c) || c == '_';
+	}
+
+	// the byte 'ahead' positions after the next one, EOS if the input is over before it
+	private int peek(int ahead) throws TokenizerException {
+		while (pos + ahead >= limit)
+			if (!fill())
+				return EOS;
+		return buffer.get(pos + ahead) & 0xFF;
+	}
+
+	/*
+	 * skips a single line comment, which ends before a line terminator or before one of the other chars
+	 * that '.' does not match in regular expressions: U+0085, U+2028 and U+2029, in UTF-8
+	 */
+	private void skipComment() throws TokenizerException {
+		for (int c; (c = peek()) != EOS && c != '\n' && c != '\r'; pos++)
+			if (c == 0xC2 && peek(1) == 0x85 || c == 0xE2 && peek(1) == 0x80 && (peek(2) == 0xA8 || peek(2) == 0xA9))
+				return;
+	}
+
+	private void lineTerminator() {
+		lines++;
+		lineEnded = true;
+	}
+
+	@Override
+	public TokenType next() throws TokenizerException {
+		try {
+			return scan();
+		} catch (InternalError e) {
+			/*
+			 * reading a page of a mapped file that has been truncated while being scanned raises an
+			 * InternalError ("a fault occurred in an unsafe memory access operation"), it is an I/O error
+			 */
+			if (channel == null)
+				throw e;
+			throw new TokenizerException(new IOException("the input file was truncated while being read", e));
+		}
+	}
+
+	private TokenType scan() throws TokenizerException {
+		type = null;
+		string = null;
+		while (true) {
+			start = pos;
+			var c = peek();
+			if (c == EOS) {
+				lineNumber = lineEnded ? lines : lines + 1; // the last line may have no terminator
+				return type = EOF;
+			}
+			lineNumber = lines + 1;
+			pos++;
+			switch (c) {
+			case '\n' -> lineTerminator();
+			case '\r' -> { // "\r\n" is a single line terminator
+				lineTerminator();
+				if (peek() == '\n')
+					pos++;
+			}
+			case ' ', '\t', '\u000B', '\f' -> lineEnded = false;
+			case '/' -> {
+				if (peek() != '/')
+					unrecognizedToken();
+				skipComment();
+				lineEnded = false;
+			}
+			default -> {
+				lineEnded = false;
+				return token(c);
+			}
+			}
+		}
+	}
+
+	// recognizes the token starting with char 'c', which has been consumed
+	private TokenType token(int c) throws TokenizerException {
+		switch (c) {
+		case '&':
+			return twoCharSymbol('&', AND, "&&");
+		case '.':
+			return twoCharSymbol('.', RANGE_OP, "..");
+		case '=':
+			if (peek() != '=')
+				return symbol(ASSIGN, "=");
+			pos++;
+			return symbol(EQ, "==");
+		case '}':
+			return symbol(CLOSE_BLOCK, "}");
+		case ')':
+			return symbol(CLOSE_PAR, ")");
+		case ']':
+			return symbol(CLOSE_DICT, "]");
+		case '-':
+			return symbol(MINUS, "-");
+		case '!':
+			return symbol(NOT, "!");
+		case '{':
+			return symbol(OPEN_BLOCK, "{");
+		case '(':
+			return symbol(OPEN_PAR, "(");
+		case '[':
+			return symbol(OPEN_DICT, "[");
+		case ',':
+			return symbol(PAIR_OP, ",");
+		case '+':
+			return symbol(PLUS, "+");
+		case ';':
+			return symbol(STMT_SEP, ";");
+		case ':':
+			return symbol(DICT_OP, ":");
+		case '*':
+			return symbol(TIMES, "*");
+		}
+		if (isLetter(c))
+			return identOrKeyword();
+		if (isDigit(c))
+			return number(c);
+		return unrecognizedToken();
+	}
+
+	private TokenType symbol(TokenType symbolType, String lexeme) {
+		string = lexeme;
+		return type = symbolType;
+	}
+
+	// symbols of two equal chars, the first one has been consumed
+	private TokenType twoCharSymbol(char second, TokenType symbolType, String lexeme) throws TokenizerException {
+		if (peek() != second)
+			unrecognizedToken();
+		pos++;
+		return symbol(symbolType, lexeme);
+	}
+
+	private TokenType identOrKeyword() throws TokenizerException {
+		while (isWordChar(peek()))
+			pos++;
+		var length = pos - start;
+		var h = keywordHash(buffer, start, length);
+		var keyword = keywordBytes[h];
+		if (keyword != null && isLexeme(keyword)) {
+			string = keywords[h];
+			boolValue = string.equals("true");
+			return type = keywordTypes[h];
+		}
+		string = identifier();
+		return type = IDENT;
+	}
+
+	// true if the lexeme consists of the bytes 'chars'
+	private boolean isLexeme(byte[] chars) {
+		if (chars.length != pos - start)
+			return false;
+		for (var i = 0; i < chars.length; i++)
+			if (buffer.get(start + i) != chars[i])
+				return false;
+		return true;
+	}
+
+	// the String of the identifier lexeme, the same object for all occurrences of the identifier
+	private String identifier() {
+		var hash = 0;
+		for (var i = start; i < pos; i++)
+			hash = 31 * hash + buffer.get(i);
+		var mask = identBytes.length - 1;
+		var i = hash & mask;
+		for (; identBytes[i] != null; i = i + 1 & mask)
+			if (identHashes[i] == hash && isLexeme(identBytes[i]))
+				return identStrings[i];
+		var chars = new byte[pos - start];
+		buffer.get(start, chars);
+		var ident = new String(chars, StandardCharsets.US_ASCII);
+		identBytes[i] = chars;
+		identStrings[i] = ident;
+		identHashes[i] = hash;
+		if (++identCount * 2 > identBytes.length)
+			growIdentifiers();
+		return ident;
+	}
+
+	private void growIdentifiers() {
+		var oldBytes = identBytes;
+		var oldStrings = identStrings;
+		var oldHashes = identHashes;
+		identBytes = new byte[2 * oldBytes.length][];
+		identStrings = new String[identBytes.length];
+		identHashes = new int[identBytes.length];
+		var mask = identBytes.length - 1;
+		for (var j = 0; j < oldBytes.length; j++)
+			if (oldBytes[j] != null) {
+				var i = oldHashes[j] & mask;
+				while (identBytes[i] != null)
+					i = i + 1 & mask;
+				identBytes[i] = oldBytes[j];
+				identStrings[i] = oldStrings[j];
+				identHashes[i] = oldHashes[j];
+			}
+	}
+
+	// radix 10 natural numbers without leading zeros: "01" is recognized as two numbers
+	private TokenType number(int first) throws TokenizerException {
+		long value = first - '0';
+		if (value > 0)
+			for (int c; isDigit(c = peek()); pos++)
+				if ((value = 10 * value + c - '0') > Integer.MAX_VALUE)
+					throw new TokenizerException(String.format("on line %s integer literal too large starting at '%s'",
+							lineNumber, restOfLine()));
+		intValue = (int) value;
+		return type = NUM;
+	}
+
+	// the chars from the start of the current lexeme to the end of the line, decoded as FileReader does
+	private String restOfLine() throws TokenizerException {
+		pos = start;
+		for (int c; (c = peek()) != EOS && c != '\n' && c != '\r'; pos++)
+			;
+		var line = new byte[pos - start];
+		buffer.get(start, line);
+		return new String(line, Charset.defaultCharset());
+	}
+
+	private TokenType unrecognizedToken() throws TokenizerException {
+		throw new TokenizerException(
+				String.format("on line %s unrecognized token starting at '%s'", lineNumber, restOfLine()));
+	}
+
+	private void checkLegalState() {
+		if (type == null)
+			throw new IllegalStateException("No token was recognized");
+	}
+
+	private void checkLegalState(TokenType tokenType) {
+		checkLegalState();
+		if (type != tokenType)
+			throw new IllegalStateException(String.format("No token of type %s was recognized", tokenType));
+	}
+
+	@Override
+	public TokenType tokenType() {
+		checkLegalState();
+		return type;
+	}
+
+	@Override
+	public String tokenString() { // lexeme of the most recently recognized token, if any
+		checkLegalState();
+		if (type == NUM && string == null)
+			string = Integer.toString(intValue); // numbers have no leading zeros
+		return string;
+	}
+
+	@Override
+	public boolean boolValue() {
+		checkLegalState(BOOL);
+		return boolValue;
+	}
+
+	@Override
+	public int intValue() {
+		checkLegalState(NUM);
+		return intValue;
+	}
+
+	@Override
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	// position in the input of the first byte of the current token, the length of the input for EOF
+	public long tokenOffset() {
+		checkLegalState();
+		return offset + start;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		else
+			stream.close();
+	}
+
+}
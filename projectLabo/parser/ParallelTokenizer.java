@@ -0,0 +1,242 @@
+package projectLabo.parser;
+
+import static projectLabo.parser.TokenType.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * scanner of a large regular file, which is split into chunks of whole lines scanned in parallel
+ * by DfaTokenizer on the common fork/join pool; the tokens of each chunk are kept in a buffer and
+ * the parser reads the buffers in order, while the next chunks are being scanned
+ *
+ * a chunk ends after a '\n', so no token, comment or "\r\n" line terminator spans two chunks and
+ * each chunk can be scanned as if it were a file; its line numbers are shifted by the lines of the
+ * previous chunks when its tokens are read
+ *
+ * tokens, line numbers and error messages are the same as the ones of DfaTokenizer: a chunk with a
+ * lexical error keeps the tokens before it, and when the parser gets to the error the chunk is
+ * scanned again, with the right line numbers, to raise it
+ */
+public class ParallelTokenizer implements TokenizerInterface {
+
+	private static final int CHUNK_SIZE = 1 << 20; // minimum size of a chunk, in bytes
+	private static final int SEARCH_SIZE = 1 << 12; // bytes read at a time looking for the end of a chunk
+	private static final TokenType[] tokenTypes = TokenType.values();
+
+	// tokens of bytes [from, to) of the file; the buffers of a chunk that has been read are reused for the next one
+	private static final class Chunk {
+		long from;
+		long to;
+		byte[] types; // ordinals of the token types
+		int[] values; // values of NUM and BOOL tokens (1 for true), indexes in 'identifiers' of IDENT tokens
+		int[] lines; // line numbers from the beginning of the chunk
+		int size;
+		String[] identifiers = new String[16]; // lexemes of the IDENT tokens, in order
+		int identifierCount;
+		final String[] lexemes = new String[tokenTypes.length]; // of the other tokens, one for each type
+		int lineCount; // lines of the chunk, as the line number of EOF
+		TokenizerException error; // raised after the tokens, if any
+
+		Chunk(int capacity) {
+			types = new byte[capacity];
+			values = new int[capacity];
+			lines = new int[capacity];
+		}
+
+		Chunk reset(long from, long to) {
+			this.from = from;
+			this.to = to;
+			size = identifierCount = lineCount = 0;
+			error = null;
+			return this;
+		}
+
+		void add(DfaTokenizer tokenizer, TokenType type) {
+			if (size == types.length) {
+				var capacity = size + (size >> 1) + 16;
+				types = Arrays.copyOf(types, capacity);
+				values = Arrays.copyOf(values, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+			}
+			types[size] = (byte) type.ordinal();
+			switch (type) {
+			case NUM -> values[size] = tokenizer.intValue();
+			case BOOL -> values[size] = tokenizer.boolValue() ? 1 : 0;
+			case IDENT -> {
+				if (identifierCount == identifiers.length)
+					identifiers = Arrays.copyOf(identifiers, 2 * identifierCount);
+				identifiers[identifierCount] = tokenizer.tokenString();
+				values[size] = identifierCount++;
+			}
+			default -> lexemes[type.ordinal()] = tokenizer.tokenString();
+			}
+			lines[size++] = tokenizer.getLineNumber();
+		}
+	}
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int chunkSize;
+	private final int ahead = 2 * ForkJoinPool.getCommonPoolParallelism(); // chunks scanned while the parser reads one
+	private final ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+	private long scheduled; // end of the bytes already split into chunks
+
+	/* the chunk being read and the most recently recognized token, 'type' is null if there is none */
+	private Chunk chunk = new Chunk(0);
+	private int index = -1; // of the token in the chunk
+	private Chunk spare; // already read, its buffers can be reused
+	private int lineBase; // lines before the chunk
+	private TokenType type;
+	private int lineNumber;
+
+	ParallelTokenizer(FileChannel channel, int chunkSize) throws IOException {
+		this.channel = channel;
+		this.fileSize = channel.size();
+		this.chunkSize = chunkSize;
+		schedule();
+	}
+
+	/*
+	 * scanner of the file 'path', in parallel if it is a regular file and the common pool has more
+	 * than one thread, by a single DfaTokenizer otherwise
+	 */
+	public static TokenizerInterface open(String path) throws IOException {
+		if (!Files.isRegularFile(Path.of(path)) || ForkJoinPool.getCommonPoolParallelism() < 2)
+			return DfaTokenizer.open(path);
+		return new ParallelTokenizer(new FileInputStream(path).getChannel(), CHUNK_SIZE);
+	}
+
+	// starts scanning the next chunks, up to 'ahead' chunks waiting to be read
+	private void schedule() throws IOException {
+		while (pending.size() < ahead && scheduled < fileSize) {
+			var from = scheduled;
+			var to = endOfChunk(from + chunkSize);
+			var buffers = spare != null ? spare : new Chunk(chunkSize / 3 + 16); // about one token every three bytes
+			spare = null;
+			pending.add(ForkJoinPool.commonPool().submit(() -> scan(buffers.reset(from, to))));
+			scheduled = to;
+		}
+	}
+
+	// the position after the first '\n' at or after 'pos', or the size of the file
+	private long endOfChunk(long pos) throws IOException {
+		var bytes = ByteBuffer.allocate(SEARCH_SIZE);
+		while (pos < fileSize) {
+			bytes.clear();
+			var read = channel.read(bytes, pos);
+			for (var i = 0; i < read; i++)
+				if (bytes.get(i) == '\n')
+					return pos + i + 1;
+			pos += Math.max(read, 0);
+		}
+		return fileSize;
+	}
+
+	private Chunk scan(Chunk scanned) {
+		var tokenizer = new DfaTokenizer(channel, scanned.from, scanned.to, 0);
+		try {
+			for (var type = tokenizer.next(); type != EOF; type = tokenizer.next())
+				scanned.add(tokenizer, type);
+			scanned.lineCount = tokenizer.getLineNumber();
+		} catch (TokenizerException e) {
+			scanned.error = e;
+		}
+		return scanned;
+	}
+
+	// raises the error of the chunk, with the line numbers of the whole file
+	private void raise() throws TokenizerException {
+		var tokenizer = new DfaTokenizer(channel, chunk.from, chunk.to, lineBase);
+		while (tokenizer.next() != EOF)
+			;
+		throw chunk.error; // an I/O error may not happen again
+	}
+
+	@Override
+	public TokenType next() throws TokenizerException {
+		type = null;
+		while (++index >= chunk.size) {
+			if (chunk.error != null)
+				raise();
+			if (pending.isEmpty()) {
+				lineNumber = lineBase + chunk.lineCount;
+				return type = EOF;
+			}
+			lineBase += chunk.lineCount;
+			spare = chunk;
+			chunk = pending.remove().join();
+			index = -1;
+			try {
+				schedule();
+			} catch (IOException e) {
+				throw new TokenizerException(e);
+			}
+		}
+		lineNumber = lineBase + chunk.lines[index];
+		return type = tokenTypes[chunk.types[index]];
+	}
+
+	private void checkLegalState() {
+		if (type == null)
+			throw new IllegalStateException("No token was recognized");
+	}
+
+	private void checkLegalState(TokenType tokenType) {
+		checkLegalState();
+		if (type != tokenType)
+			throw new IllegalStateException(String.format("No token of type %s was recognized", tokenType));
+	}
+
+	@Override
+	public TokenType tokenType() {
+		checkLegalState();
+		return type;
+	}
+
+	@Override
+	public String tokenString() { // lexeme of the most recently recognized token, if any
+		checkLegalState();
+		if (type == EOF)
+			return null;
+		return switch (type) {
+		case NUM -> Integer.toString(chunk.values[index]); // numbers have no leading zeros
+		case BOOL -> chunk.values[index] != 0 ? "true" : "false";
+		case IDENT -> chunk.identifiers[chunk.values[index]];
+		default -> chunk.lexemes[type.ordinal()];
+		};
+	}
+
+	@Override
+	public boolean boolValue() {
+		checkLegalState(BOOL);
+		return chunk.values[index] != 0;
+	}
+
+	@Override
+	public int intValue() {
+		checkLegalState(NUM);
+		return chunk.values[index];
+	}
+
+	@Override
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (var task : pending)
+			task.cancel(false);
+		channel.close();
+	}
+
+}
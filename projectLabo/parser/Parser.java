@@ -1,6 +1,8 @@
 package projectLabo.parser;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import static java.util.Objects.requireNonNull;
 import static projectLabo.parser.TokenType.*;
 import projectLabo.parser.ast.*;
@@ -8,7 +10,7 @@ import projectLabo.parser.ast.Dict.DictOp;
 
 /*
 	Prog ::= StmtSeq EOF
-	StmtSeq ::= Stmt (STMT_SEP StmtSeq)?
+	StmtSeq ::= Stmt (STMT_SEP Stmt)*
 	Stmt ::= VAR? IDENT ASSIGN Exp | PRINT Exp | IF OPEN_ROUND_PAR Exp CLOSE_ROUND_PAR Block (ELSE Block)? | FOR OPEN_ROUND_PAR VAR IDENT OF Exp CLOSE_ROUND_PAR Block
 	Block ::= OPEN_BLOCK StmtSeq CLOSE_BLOCK
 	Exp ::= And (PAIR_OP And)*
@@ -18,12 +20,14 @@ import projectLabo.parser.ast.Dict.DictOp;
 	Mul::= Unary (TIMES Unary)*
 	Unary ::= FST Unary | SND Unary | MINUS Unary | NOT Unary | Dict
 	Dict :: = Atom (OPEN_SQUARE_PAR Exp(COLUMNS Exp?)? CLOSE_SQUARE_PAR)* 
-	Atom ::= OPEN_SQUARE_PAR Exp COLONS Exp CLOSE_SQUARE_PAR | BOOL | NUM | IDENT | OPEN_ROUND_PAR Exp CLOSE_ROUND_PAR
+	Atom ::= OPEN_SQUARE_PAR Exp (RANGE_OP Exp)? COLONS Exp CLOSE_SQUARE_PAR | BOOL | NUM | IDENT | OPEN_ROUND_PAR Exp CLOSE_ROUND_PAR
 */
 
 public class Parser implements ParserInterface {
 
-	private final Tokenizer tokenizer; // the tokenizer used by the parser
+	private final TokenizerInterface tokenizer; // the tokenizer used by the parser
+	private final NodeFactory nodes; // builds the nodes of the AST
+	private final Symbols symbols; // names of the variables
 
 	// decorates error message with the corresponding line number
 	private String lineErrMsg(String msg) {
@@ -58,8 +62,20 @@ public class Parser implements ParserInterface {
 	}
 
 	// associates the parser with a corresponding non-null  tokenizer
-	public Parser(Tokenizer tokenizer) {
+	public Parser(TokenizerInterface tokenizer) {
+		this(tokenizer, NodeFactory.TREE);
+	}
+
+	// the AST is built by 'nodes', for instance in the compact form of 'NodePool'
+	public Parser(TokenizerInterface tokenizer, NodeFactory nodes) {
+		this(tokenizer, nodes, new Symbols());
+	}
+
+	// the names of the variables are interned in 'symbols', which can be shared by the parsers of the parts of a program
+	public Parser(TokenizerInterface tokenizer, NodeFactory nodes, Symbols symbols) {
 		this.tokenizer = requireNonNull(tokenizer);
+		this.nodes = requireNonNull(nodes);
+		this.symbols = requireNonNull(symbols);
 	}
 
 	/*
@@ -68,11 +84,22 @@ public class Parser implements ParserInterface {
 	@Override
 	public Prog parseProg() throws ParserException {
 		tokenizer.next(); // one look-ahead symbol
-		final var prog = new LangProg(parseStmtSeq());
+		final var prog = nodes.prog(parseStmtSeq());
 		match(EOF); // last token must have type EOF
 		return prog;
 	}
 
+	/*
+	 * parses whole top-level statements of a program, to parse again only the statements
+	 * changed in a watched file StmtSeq EOF
+	 */
+	public List<Stmt> parseStmts() throws ParserException {
+		tokenizer.next(); // one look-ahead symbol
+		final var stmts = parseStmtList();
+		match(EOF);
+		return stmts;
+	}
+
 	@Override
 	public void close() throws IOException {
 		if (tokenizer != null)
@@ -80,18 +107,21 @@ public class Parser implements ParserInterface {
 	}
 
 	/*
-	 * parses a non-empty sequence of statements, binary operator STMT_SEP is right
-	 * associative StmtSeq ::= Stmt (STMT_SEP StmtSeq)?
+	 * parses a non-empty sequence of statements with a loop, so that long programs do
+	 * not need a deep recursion StmtSeq ::= Stmt (STMT_SEP Stmt)*
 	 */
 	private StmtSeq parseStmtSeq() throws ParserException {
-		final var stmt = parseStmt();
-		StmtSeq stmtSeq;
-		if (tokenizer.tokenType() == STMT_SEP) {
+		return nodes.stmtList(parseStmtList());
+	}
+
+	private List<Stmt> parseStmtList() throws ParserException {
+		final var stmts = new ArrayList<Stmt>();
+		stmts.add(parseStmt());
+		while (tokenizer.tokenType() == STMT_SEP) {
 			tokenizer.next();
-			stmtSeq = parseStmtSeq();
-		} else
-			stmtSeq = new EmptyStmtSeq();
-		return new NonEmptyStmtSeq(stmt, stmtSeq);
+			stmts.add(parseStmt());
+		}
+		return stmts;
 	}
 
 	/*
@@ -113,51 +143,51 @@ public class Parser implements ParserInterface {
 	 * parses the print statement
 	 * Stmt ::= PRINT Exp
 	 */
-	private PrintStmt parsePrintStmt() throws ParserException {
+	private Stmt parsePrintStmt() throws ParserException {
 		consume(PRINT); // or tokenizer.next() if the method is only called by parseStmt()
-		return new PrintStmt(parseExp());
+		return nodes.printStmt(parseExp());
 	}
 
 	/*
 	 * parses the var statement
 	 * Stmt ::= VAR IDENT ASSIGN Exp
 	 */
-	private VarStmt parseVarStmt() throws ParserException {
+	private Stmt parseVarStmt() throws ParserException {
 		consume(VAR); // or tokenizer.next() if the method is only called by parseStmt()
 		final var var = parseVariable();
 		consume(ASSIGN);
-		return new VarStmt(var, parseExp());
+		return nodes.varStmt(var, parseExp());
 	}
 
 	/*
 	 * parses the assignment statement
 	 * Stmt ::= IDENT ASSIGN Exp
 	 */
-	private AssignStmt parseAssignStmt() throws ParserException {
+	private Stmt parseAssignStmt() throws ParserException {
 		final var var = parseVariable();
 		consume(ASSIGN);
-		return new AssignStmt(var, parseExp());
+		return nodes.assignStmt(var, parseExp());
 	}
 
 	/*
 	 * parses the if-then-else statement
 	 * Stmt ::= IF OPEN_PAR Exp CLOSE_PAR Block (ELSE Block)?
 	 */
-	private IfStmt parseIfStmt() throws ParserException {
+	private Stmt parseIfStmt() throws ParserException {
 		consume(IF); // or tokenizer.next() since IF has already been recognized
 		final var exp = parseRoundPar();
 		final var thenBlock = parseBlock();
 		if (tokenizer.tokenType() != ELSE)
-			return new IfStmt(exp, thenBlock);
+			return nodes.ifStmt(exp, thenBlock, null);
 		tokenizer.next();
-		return new IfStmt(exp, thenBlock, parseBlock());
+		return nodes.ifStmt(exp, thenBlock, parseBlock());
 	}
 
 	/*
 	 * parses the for cycle statement
 	 * Stmt ::= FOR OPEN_ROUND_PAR VAR IDENT COLONS Exp CLOSE_ROUND_PAR Block
 	 */
-	private ForStmt parseForStmt() throws ParserException {
+	private Stmt parseForStmt() throws ParserException {
 
 		consume(FOR); // or tokenizer.next() since FOR has already been recognized
 
@@ -171,7 +201,7 @@ public class Parser implements ParserInterface {
 
 		final var body = parseBlock(); // Passiamo al blocco successivo 
     
-    	return new ForStmt(variable, iterable, body); // Ritorniamo l'AST del for
+    	return nodes.forStmt(variable, iterable, body); // Ritorniamo l'AST del for
 	}
 	
 	/*
@@ -182,7 +212,7 @@ public class Parser implements ParserInterface {
 		consume(OPEN_BLOCK);
 		final var stmts = parseStmtSeq();
 		consume(CLOSE_BLOCK);
-		return new Block(stmts);
+		return nodes.block(stmts);
 	}
 
 	/*
@@ -195,7 +225,7 @@ public class Parser implements ParserInterface {
 		var exp = parseAnd();
 		while (tokenizer.tokenType() == PAIR_OP) {
 			tokenizer.next();
-			exp = new PairLit(exp, parseAnd());
+			exp = nodes.pairLit(exp, parseAnd());
 		}
 		return exp;
 	}
@@ -209,7 +239,7 @@ public class Parser implements ParserInterface {
 		var exp = parseEq();
 		while (tokenizer.tokenType() == AND) {
 			tokenizer.next();
-			exp = new And(exp, parseEq());
+			exp = nodes.and(exp, parseEq());
 		}
 		return exp;
 	}
@@ -223,7 +253,7 @@ public class Parser implements ParserInterface {
 		var exp = parseAdd();
 		while (tokenizer.tokenType() == EQ) {
 			tokenizer.next();
-			exp = new Eq(exp, parseAdd());
+			exp = nodes.eq(exp, parseAdd());
 		}
 		return exp;
 	}
@@ -237,7 +267,7 @@ public class Parser implements ParserInterface {
 		var exp = parseMul();
 		while (tokenizer.tokenType() == PLUS) {
 			tokenizer.next();
-			exp = new Add(exp, parseMul());
+			exp = nodes.add(exp, parseMul());
 		}
 		return exp;
 	}
@@ -251,7 +281,7 @@ public class Parser implements ParserInterface {
 		var exp = parseUnary();
 		while (tokenizer.tokenType() == TIMES) {
 			tokenizer.next();
-			exp = new Mul(exp, parseUnary());
+			exp = nodes.mul(exp, parseUnary());
 		}
 		return exp;
 	}
@@ -291,14 +321,14 @@ public class Parser implements ParserInterface {
 				if(tokenizer.tokenType() != CLOSE_DICT){ // Se Esiste un exp dopo i due punti, Update
 					Exp value = parseExp();
 					consume(CLOSE_DICT);
-					exp = new Dict(DictOp.UPDATE, exp, key, value);
+					exp = nodes.dict(DictOp.UPDATE, exp, key, value);
 				} else{
 					consume(CLOSE_DICT); // Delete
-					exp = new Dict(DictOp.DELETE, exp, key);
+					exp = nodes.dict(DictOp.DELETE, exp, key, null);
 				}
 			} else{
 				consume(CLOSE_DICT);
-				exp = new Dict(DictOp.GET, exp, key);
+				exp = nodes.dict(DictOp.GET, exp, key, null);
 			}
 		}
 
@@ -308,7 +338,7 @@ public class Parser implements ParserInterface {
 
 	/*
 	 * parses expressions of type Atom
-	 * Atom ::= OPEN_SQUARE_PAR Exp COLONS Exp CLOSE_SQUARE_PAR | BOOL | NUM | IDENT | OPEN_ROUND_PAR Exp CLOSE_ROUND_PAR
+	 * Atom ::= OPEN_SQUARE_PAR Exp (RANGE_OP Exp)? COLONS Exp CLOSE_SQUARE_PAR | BOOL | NUM | IDENT | OPEN_ROUND_PAR Exp CLOSE_ROUND_PAR
 	 */
 	private Exp parseAtom() throws ParserException {
 		return switch (tokenizer.tokenType()) {
@@ -322,62 +352,62 @@ public class Parser implements ParserInterface {
 	}
 
 	// parses number literals
-	private IntLiteral parseNum() throws ParserException {
+	private Exp parseNum() throws ParserException {
 		match(NUM); // can be omitted if the method is only called by parseAtom()
 		final var val = tokenizer.intValue();
 		tokenizer.next(); // if tokenizer.intValue() does not throw an exception, then NUM has been recognized
-		return new IntLiteral(val);
+		return nodes.intLiteral(val);
 	}
 
 	// parses boolean literals
-	private BoolLiteral parseBoolean() throws ParserException {
+	private Exp parseBoolean() throws ParserException {
 		match(BOOL); // can be omitted if the method is only called by parseAtom()
 		final var val = tokenizer.boolValue();
 		tokenizer.next(); // if tokenizer.boolValue() does not throw an exception, then BOOL has been recognized
-		return new BoolLiteral(val);
+		return nodes.boolLiteral(val);
 	}
 
 	// parses variable identifiers
 	private Variable parseVariable() throws ParserException {
 		final var name = tokenizer.tokenString();
 		consume(IDENT); // this check is necessary for parsing correctly the VAR statement
-		return new Variable(name);
+		return nodes.variable(name, symbols);
 	}
 
 	/*
 	 * parses expressions with unary operator MINUS
 	 * Atom ::= MINUS Atom
 	 */
-	private Minus parseMinus() throws ParserException {
+	private Exp parseMinus() throws ParserException {
 		consume(MINUS); // can be omitted if the method is only called by parseAtom()
-		return new Minus(parseDict());// Modificato per gestire casi -var[dict]
+		return nodes.minus(parseDict());// Modificato per gestire casi -var[dict]
 	}
 
 	/*
 	 * parses expressions with unary operator FST
 	 * Atom ::= FST Atom
 	 */
-	private Fst parseFst() throws ParserException {
+	private Exp parseFst() throws ParserException {
 		consume(FST); // can be omitted if the method is only called by parseAtom()
-		return new Fst(parseAtom());
+		return nodes.fst(parseAtom());
 	}
 
 	/*
 	 * parses expressions with unary operator SND
 	 * Atom ::= SND Atom
 	 */
-	private Snd parseSnd() throws ParserException {
+	private Exp parseSnd() throws ParserException {
 		consume(SND); // can be omitted if the method is only called by parseAtom()
-		return new Snd(parseAtom());
+		return nodes.snd(parseAtom());
 	}
 
 	/*
 	 * parses expressions with unary operator NOT
 	 * Atom ::= NOT Atom
 	 */
-	private Not parseNot() throws ParserException {
+	private Exp parseNot() throws ParserException {
 		consume(NOT); // can be omitted if the method is only called by parseAtom()
-		return new Not(parseDict()); // Modificato per gestire casi !var[dict]
+		return nodes.not(parseDict()); // Modificato per gestire casi !var[dict]
 	}
 
 	/*
@@ -393,17 +423,25 @@ public class Parser implements ParserInterface {
 
 	/*
 	 * parses expressions delimited by square parentheses
-	 * Atom ::= OPEN_SQUARE_PAR Exp COLONS Exp CLOSE_SQUARE_PAR
+	 * Atom ::= OPEN_SQUARE_PAR Exp (RANGE_OP Exp)? COLONS Exp CLOSE_SQUARE_PAR
 	 */
 	private Exp parseSquarePar() throws ParserException {
 		consume(OPEN_DICT);
 		Exp key = parseExp(); // Otteniamo la prima espressione
 
+		Exp high = null;
+		if (tokenizer.tokenType() == RANGE_OP) { // Intervallo di chiavi [low..high : value]
+			consume(RANGE_OP);
+			high = parseExp();
+		}
+
 		consume(DICT_OP);
 
 		Exp value = parseExp(); // Otteniamo la seconda espressione
 		consume(CLOSE_DICT);
 
-		return new Dict(DictOp.CREATE, null, key, value); // Creo il dizionario 
+		if (high != null)
+			return nodes.dict(DictOp.RANGE, key, high, value); // Dizionario virtuale sull'intervallo
+		return nodes.dict(DictOp.CREATE, null, key, value); // Creo il dizionario 
 	}
 }
\ No newline at end of file
@@ -8,7 +8,7 @@ public enum TokenType {
 	// end-of-file
 	EOF,
 	// symbols
-	AND, ASSIGN, CLOSE_BLOCK, CLOSE_DICT, CLOSE_PAR, EQ, MINUS, NOT, OPEN_BLOCK, OPEN_PAR, OPEN_DICT, PAIR_OP, PLUS, STMT_SEP, DICT_OP, TIMES,
+	AND, ASSIGN, CLOSE_BLOCK, CLOSE_DICT, CLOSE_PAR, EQ, MINUS, NOT, OPEN_BLOCK, OPEN_PAR, OPEN_DICT, PAIR_OP, PLUS, STMT_SEP, DICT_OP, RANGE_OP, TIMES,
 	// keywords
 	BOOL, ELSE, FST, IF, PRINT, SND, VAR, FOR, OF, DICT
 }
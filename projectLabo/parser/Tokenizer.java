@@ -47,6 +47,7 @@ public class Tokenizer implements TokenizerInterface {
         symbols.put("+", PLUS);
         symbols.put(";", STMT_SEP);
         symbols.put(":", DICT_OP); // Due Punti
+        symbols.put("..", RANGE_OP); // Estremi di un intervallo di chiavi
         symbols.put("*", TIMES);
 
         keywords.put("else", ELSE);
@@ -84,7 +85,7 @@ public class Tokenizer implements TokenizerInterface {
          * word boundary '\b' since keywords match only if the next symbol is not a
          * letter
          */
-        final var keywordRegEx = String.format("(?<%s>%s\\b)", KEYWORD.name(), String.join("|", keywords.keySet())); // keywords
+        final var keywordRegEx = String.format("(?<%s>(?:%s)\\b)", KEYWORD.name(), String.join("|", keywords.keySet())); // keywords
         final var skipRegEx = String.format("(?<%s>\\s+|//.*)", SKIP.name()); // white spaces or single line comments to
         // be skipped
         final var identRegEx = String.format("(?<%s>[a-zA-Z]\\w*)", IDENT.name()); // identifiers
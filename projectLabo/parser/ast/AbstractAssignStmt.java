@@ -11,6 +11,10 @@ public abstract class AbstractAssignStmt implements Stmt {
 		this.exp = requireNonNull(exp);
 	}
 
+	public Variable getVar() {
+		return var;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s(%s,%s)", getClass().getSimpleName(), var, exp);
@@ -5,11 +5,15 @@ import projectLabo.visitors.Visitor;
 
 public class Dict implements Exp {
 
-    public enum DictOp { GET, UPDATE, DELETE, CREATE } // Enum per Operazioni
+    public enum DictOp { GET, UPDATE, DELETE, CREATE, RANGE } // Enum per Operazioni
 
+    /*
+     * RANGE e' la creazione [low..high : value] di un dizionario che associa 'value' a tutte le chiavi
+     * da low a high (incluse): 'dict' e 'key' sono gli estremi dell'intervallo, valutati in quest'ordine
+     */
     private final DictOp op;
-    private final Exp dict; // solo per operazioni, null per la creazione
-    private final Exp key;
+    private final Exp dict; // solo per operazioni, null per la creazione; estremo inferiore per RANGE
+    private final Exp key; // estremo superiore per RANGE
     private final Exp value; // null per get e delete
 
     // Costruttore generale per operazioni su dizionario pre-esistente (get, update, delete)
@@ -24,7 +28,7 @@ public class Dict implements Exp {
             this.dict = requireNonNull(dict);
         }
         this.key = requireNonNull(key);
-        this.value = value; // null per get e delete
+        this.value = op == DictOp.RANGE ? requireNonNull(value) : value; // null per get e delete
     }
 
     // Costruttore per operazioni di get e delete
@@ -47,6 +51,7 @@ public class Dict implements Exp {
             case GET -> String.format("(%s)[%s]", dict, key);
             case DELETE -> String.format("(%s)[%s:]", dict, key);
             case UPDATE -> String.format("(%s)[%s:%s]", dict, key, value);
+            case RANGE -> String.format("[%s..%s:%s]", dict, key, value);
         };
     }
 
@@ -1,12 +0,0 @@
-package projectLabo.parser.ast;
-
-public abstract class EmptySeq {
-
-	protected EmptySeq() {
-	}
-
-	@Override
-	public String toString() {
-		return getClass().getSimpleName();
-	}
-}
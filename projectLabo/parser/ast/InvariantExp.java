@@ -0,0 +1,24 @@
+package projectLabo.parser.ast;
+
+import projectLabo.visitors.Visitor;
+
+/*
+ * expression that does not change during the execution of an enclosing 'for' loop, introduced by
+ * the 'Hoist' pass; 'id' identifies the expression, 'loopDepth' is the nesting depth (starting from 1)
+ * of the outermost loop for which the expression is invariant
+ */
+public class InvariantExp extends UnaryOp {
+	private final int id;
+	private final int loopDepth;
+
+	public InvariantExp(Exp exp, int id, int loopDepth) {
+		super(exp);
+		this.id = id;
+		this.loopDepth = loopDepth;
+	}
+
+	@Override
+	public <T> T accept(Visitor<T> visitor) {
+		return visitor.visitInvariant(exp, id, loopDepth);
+	}
+}
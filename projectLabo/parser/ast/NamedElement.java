@@ -2,4 +2,15 @@ package projectLabo.parser.ast;
 
 public interface NamedElement {
 	String name();
+
+	// dense id of the name in the symbol table, see Symbols
+	int id();
+
+	/*
+	 * static coordinates assigned by the resolver: number of scopes to walk out
+	 * from the innermost one and slot index in that scope; -1 if not resolved
+	 */
+	int depth();
+
+	int slot();
 }
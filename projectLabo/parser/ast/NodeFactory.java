@@ -0,0 +1,104 @@
+package projectLabo.parser.ast;
+
+import java.util.List;
+
+import projectLabo.parser.ast.Dict.DictOp;
+
+/*
+ * builds the nodes of the AST for the parser; the default methods build the usual tree of objects,
+ * 'NodePool' builds the compact form
+ *
+ * the parser calls the methods in postfix order: the operands of a node are always built before it
+ */
+public interface NodeFactory {
+
+	NodeFactory TREE = new NodeFactory() {
+	};
+
+	default Prog prog(StmtSeq stmtSeq) {
+		return new LangProg(stmtSeq);
+	}
+
+	default StmtSeq stmtList(List<Stmt> stmts) {
+		return new StmtList(stmts);
+	}
+
+	default Block block(StmtSeq stmtSeq) {
+		return new Block(stmtSeq);
+	}
+
+	default Stmt printStmt(Exp exp) {
+		return new PrintStmt(exp);
+	}
+
+	default Stmt varStmt(Variable var, Exp exp) {
+		return new VarStmt(var, exp);
+	}
+
+	default Stmt assignStmt(Variable var, Exp exp) {
+		return new AssignStmt(var, exp);
+	}
+
+	// 'elseBlock' is null if there is no else branch
+	default Stmt ifStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		return new IfStmt(exp, thenBlock, elseBlock);
+	}
+
+	default Stmt forStmt(Variable var, Exp exp, Block forBlock) {
+		return new ForStmt(var, exp, forBlock);
+	}
+
+	default Exp pairLit(Exp left, Exp right) {
+		return new PairLit(left, right);
+	}
+
+	default Exp and(Exp left, Exp right) {
+		return new And(left, right);
+	}
+
+	default Exp eq(Exp left, Exp right) {
+		return new Eq(left, right);
+	}
+
+	default Exp add(Exp left, Exp right) {
+		return new Add(left, right);
+	}
+
+	default Exp mul(Exp left, Exp right) {
+		return new Mul(left, right);
+	}
+
+	default Exp minus(Exp exp) {
+		return new Minus(exp);
+	}
+
+	default Exp fst(Exp exp) {
+		return new Fst(exp);
+	}
+
+	default Exp snd(Exp exp) {
+		return new Snd(exp);
+	}
+
+	default Exp not(Exp exp) {
+		return new Not(exp);
+	}
+
+	// same operands as the constructor of 'Dict'
+	default Exp dict(DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		return new Dict(op, dictExp, keyExp, valueExp);
+	}
+
+	default Exp intLiteral(int value) {
+		return new IntLiteral(value);
+	}
+
+	default Exp boolLiteral(boolean value) {
+		return new BoolLiteral(value);
+	}
+
+	// both declarations and uses of variables, whose names are interned in 'symbols'
+	default Variable variable(String name, Symbols symbols) {
+		return new Variable(name, symbols);
+	}
+}
@@ -0,0 +1,413 @@
+package projectLabo.parser.ast;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import projectLabo.parser.ast.Dict.DictOp;
+import projectLabo.visitors.Visitor;
+
+/*
+ * compact form of the AST: nodes are not objects but entries of parallel arrays, 'kinds' and
+ * 'args', stored in postfix order as they are built by the parser; the last operand of the node
+ * at index i is always the node at index i - 1, so that most nodes need a single int:
+ *
+ * INT, BOOL: the value (1 for true)
+ * VAR: index of the occurrence of the variable in 'symbolIds', 'depths' and 'slots'
+ * binary operators, GET, DELETE, CREATE, IF: index of the first operand
+ * unary operators, PRINT: unused
+ * VAR_STMT, ASSIGN: index of the occurrence of the variable
+ * UPDATE, RANGE, IF_ELSE, FOR: index in 'extra' of the first two operands (the variable of FOR
+ * 	is the index of its occurrence)
+ * LIST: index in 'lists' of the number of statements, followed by their indexes
+ *
+ * a node takes 5 bytes instead of the 24-32 of an object; an occurrence of a variable takes 12 bytes
+ * for the id of its name and its static coordinates, which the resolver stores through the variables
+ * built by the visits ('PooledVariable')
+ *
+ * the program built by the parser is visited through views created on the fly ('Node' and 'Stmts'),
+ * which are garbage as soon as the visit of the node ends; dictionary operations are materialized
+ * as 'Dict' objects because Execute recognizes 'd = d[k:v]' from the AST; a 'for' statement is
+ * materialized as a tree of objects when it is visited, so that the iterations visit the same
+ * objects instead of building the body again, and the tree is garbage when the loop ends
+ *
+ * while parsing, the methods of NodeFactory return placeholders: the operands of a node are the
+ * last nodes built and not yet used, kept in the stack 'operands'; a pool holds a single program
+ */
+public final class NodePool implements NodeFactory {
+
+	// kinds of nodes
+	private static final byte INT = 0;
+	private static final byte BOOL = 1;
+	private static final byte VAR = 2;
+	private static final byte ADD = 3;
+	private static final byte MUL = 4;
+	private static final byte EQ = 5;
+	private static final byte AND = 6;
+	private static final byte PAIR = 7;
+	private static final byte MINUS = 8;
+	private static final byte FST = 9;
+	private static final byte SND = 10;
+	private static final byte NOT = 11;
+	private static final byte GET = 12;
+	private static final byte DELETE = 13;
+	private static final byte CREATE = 14;
+	private static final byte UPDATE = 15;
+	private static final byte RANGE = 16;
+	private static final byte PRINT = 17;
+	private static final byte VAR_STMT = 18;
+	private static final byte ASSIGN = 19;
+	private static final byte IF = 20;
+	private static final byte IF_ELSE = 21;
+	private static final byte FOR = 22;
+	private static final byte LIST = 23;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// placeholders returned while parsing
+	private static final class Placeholder implements Exp, Stmt, StmtSeq {
+		@Override
+		public <T> T accept(Visitor<T> visitor) {
+			throw new IllegalStateException("node of a program still being built");
+		}
+	}
+
+	private static final Placeholder PLACEHOLDER = new Placeholder();
+	private static final Block BLOCK_PLACEHOLDER = new Block(PLACEHOLDER);
+	private static final Variable VARIABLE_PLACEHOLDER = new Variable(-1, "");
+
+	private byte[] kinds = new byte[INITIAL_CAPACITY];
+	private int[] args = new int[INITIAL_CAPACITY];
+	private int size;
+	private int[] extra = new int[INITIAL_CAPACITY]; // pairs of operands of the nodes with three operands
+	private int extraSize;
+	private int[] lists = new int[INITIAL_CAPACITY]; // lengths and statements of the lists
+	private int listsSize;
+	private int[] symbolIds = new int[INITIAL_CAPACITY]; // of the occurrences of variables
+	private int[] depths = new int[INITIAL_CAPACITY]; // static coordinates of the occurrences, -1 if not resolved
+	private int[] slots = new int[INITIAL_CAPACITY];
+	private int variableCount;
+	private Symbols symbols; // of the names of the variables
+
+	// used only while parsing
+	private int[] operands = new int[INITIAL_CAPACITY]; // nodes not yet used as operands
+	private int operandCount;
+
+	// building
+
+	private static int[] ensure(int[] array, int length) {
+		return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length + (array.length >> 1)));
+	}
+
+	private int pop() {
+		return operands[--operandCount];
+	}
+
+	// appends a node whose operands have already been popped, and pushes it as operand of the next node
+	private void append(byte kind, int arg) {
+		if (size == kinds.length) {
+			var capacity = size + (size >> 1);
+			kinds = Arrays.copyOf(kinds, capacity);
+			args = Arrays.copyOf(args, capacity);
+		}
+		kinds[size] = kind;
+		args[size] = arg;
+		operands = ensure(operands, operandCount + 1);
+		operands[operandCount++] = size++;
+	}
+
+	private int extra(int first, int second) {
+		extra = ensure(extra, extraSize + 2);
+		extra[extraSize] = first;
+		extra[extraSize + 1] = second;
+		var index = extraSize;
+		extraSize += 2;
+		return index;
+	}
+
+	private Exp unary(byte kind) {
+		pop();
+		append(kind, 0);
+		return PLACEHOLDER;
+	}
+
+	private Exp binary(byte kind) {
+		pop();
+		append(kind, pop());
+		return PLACEHOLDER;
+	}
+
+	private Exp ternary(byte kind) {
+		pop();
+		var second = pop();
+		append(kind, extra(pop(), second));
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Prog prog(StmtSeq stmtSeq) {
+		var root = pop();
+		kinds = Arrays.copyOf(kinds, size);
+		args = Arrays.copyOf(args, size);
+		extra = Arrays.copyOf(extra, extraSize);
+		lists = Arrays.copyOf(lists, listsSize);
+		symbolIds = Arrays.copyOf(symbolIds, variableCount);
+		depths = Arrays.copyOf(depths, variableCount);
+		slots = Arrays.copyOf(slots, variableCount);
+		operands = null;
+		return new LangProg(new Node(root));
+	}
+
+	@Override
+	public StmtSeq stmtList(List<Stmt> stmts) {
+		var length = stmts.size(); // the statements are the last 'length' operands
+		lists = ensure(lists, listsSize + 1 + length);
+		var offset = listsSize;
+		lists[offset] = length;
+		operandCount -= length;
+		System.arraycopy(operands, operandCount, lists, offset + 1, length);
+		listsSize += 1 + length;
+		append(LIST, offset);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Block block(StmtSeq stmtSeq) { // the block is its list
+		return BLOCK_PLACEHOLDER;
+	}
+
+	@Override
+	public Stmt printStmt(Exp exp) {
+		unary(PRINT);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Stmt varStmt(Variable var, Exp exp) {
+		pop();
+		append(VAR_STMT, args[pop()]);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Stmt assignStmt(Variable var, Exp exp) {
+		pop();
+		append(ASSIGN, args[pop()]);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Stmt ifStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		if (elseBlock == null)
+			binary(IF);
+		else
+			ternary(IF_ELSE);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Stmt forStmt(Variable var, Exp exp, Block forBlock) {
+		pop();
+		var iterable = pop();
+		append(FOR, extra(args[pop()], iterable));
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Exp pairLit(Exp left, Exp right) {
+		return binary(PAIR);
+	}
+
+	@Override
+	public Exp and(Exp left, Exp right) {
+		return binary(AND);
+	}
+
+	@Override
+	public Exp eq(Exp left, Exp right) {
+		return binary(EQ);
+	}
+
+	@Override
+	public Exp add(Exp left, Exp right) {
+		return binary(ADD);
+	}
+
+	@Override
+	public Exp mul(Exp left, Exp right) {
+		return binary(MUL);
+	}
+
+	@Override
+	public Exp minus(Exp exp) {
+		return unary(MINUS);
+	}
+
+	@Override
+	public Exp fst(Exp exp) {
+		return unary(FST);
+	}
+
+	@Override
+	public Exp snd(Exp exp) {
+		return unary(SND);
+	}
+
+	@Override
+	public Exp not(Exp exp) {
+		return unary(NOT);
+	}
+
+	@Override
+	public Exp dict(DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		return switch (op) {
+		case GET -> binary(GET);
+		case DELETE -> binary(DELETE);
+		case CREATE -> binary(CREATE);
+		case UPDATE -> ternary(UPDATE);
+		case RANGE -> ternary(RANGE);
+		};
+	}
+
+	@Override
+	public Exp intLiteral(int value) {
+		append(INT, value);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Exp boolLiteral(boolean value) {
+		append(BOOL, value ? 1 : 0);
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public Variable variable(String name, Symbols symbols) {
+		this.symbols = symbols;
+		symbolIds = ensure(symbolIds, variableCount + 1);
+		depths = ensure(depths, variableCount + 1);
+		slots = ensure(slots, variableCount + 1);
+		symbolIds[variableCount] = symbols.id(name);
+		depths[variableCount] = slots[variableCount] = -1;
+		append(VAR, variableCount++);
+		return VARIABLE_PLACEHOLDER;
+	}
+
+	// visiting
+
+	// occurrence 'index' of a variable, whose static coordinates are stored in the pool by the resolver
+	private final class PooledVariable extends Variable {
+		private final int index;
+
+		PooledVariable(int index) {
+			super(symbolIds[index], symbols.name(symbolIds[index]));
+			this.index = index;
+			super.resolve(depths[index], slots[index]);
+		}
+
+		@Override
+		public void resolve(int depth, int slot) {
+			super.resolve(depth, slot);
+			depths[index] = depth;
+			slots[index] = slot;
+		}
+	}
+
+	/*
+	 * operand at index i: a view, or an object if 'tree' is true; variables and dictionary operations
+	 * are always objects
+	 */
+	private Exp exp(int i, boolean tree) {
+		return switch (kinds[i]) {
+		case VAR -> new PooledVariable(args[i]);
+		case GET, DELETE, CREATE, UPDATE, RANGE -> (Exp) node(i, tree);
+		default -> tree ? (Exp) node(i, true) : new Node(i);
+		};
+	}
+
+	private Block block(int i, boolean tree) {
+		return new Block(tree ? (StmtSeq) node(i, true) : new Node(i));
+	}
+
+	// the node at index i as an object, with views as operands or, if 'tree' is true, as a tree of objects
+	private AST node(int i, boolean tree) {
+		var arg = args[i];
+		return switch (kinds[i]) {
+		case INT -> new IntLiteral(arg);
+		case BOOL -> new BoolLiteral(arg != 0);
+		case VAR -> new PooledVariable(arg);
+		case ADD -> new Add(exp(arg, tree), exp(i - 1, tree));
+		case MUL -> new Mul(exp(arg, tree), exp(i - 1, tree));
+		case EQ -> new Eq(exp(arg, tree), exp(i - 1, tree));
+		case AND -> new And(exp(arg, tree), exp(i - 1, tree));
+		case PAIR -> new PairLit(exp(arg, tree), exp(i - 1, tree));
+		case MINUS -> new Minus(exp(i - 1, tree));
+		case FST -> new Fst(exp(i - 1, tree));
+		case SND -> new Snd(exp(i - 1, tree));
+		case NOT -> new Not(exp(i - 1, tree));
+		case GET -> new Dict(DictOp.GET, exp(arg, tree), exp(i - 1, tree), null);
+		case DELETE -> new Dict(DictOp.DELETE, exp(arg, tree), exp(i - 1, tree), null);
+		case CREATE -> new Dict(DictOp.CREATE, null, exp(arg, tree), exp(i - 1, tree));
+		case UPDATE -> new Dict(DictOp.UPDATE, exp(extra[arg], tree), exp(extra[arg + 1], tree), exp(i - 1, tree));
+		case RANGE -> new Dict(DictOp.RANGE, exp(extra[arg], tree), exp(extra[arg + 1], tree), exp(i - 1, tree));
+		case PRINT -> new PrintStmt(exp(i - 1, tree));
+		case VAR_STMT -> new VarStmt(new PooledVariable(arg), exp(i - 1, tree));
+		case ASSIGN -> new AssignStmt(new PooledVariable(arg), exp(i - 1, tree));
+		case IF -> new IfStmt(exp(arg, tree), block(i - 1, tree));
+		case IF_ELSE -> new IfStmt(exp(extra[arg], tree), block(extra[arg + 1], tree), block(i - 1, tree));
+		case FOR -> new ForStmt(new PooledVariable(extra[arg]), exp(extra[arg + 1], tree), block(i - 1, true)); // the body is visited many times
+		case LIST -> new StmtList(tree ? stmts(arg) : new Stmts(arg));
+		default -> throw new IllegalStateException("unknown kind of node " + kinds[i]);
+		};
+	}
+
+	// the statements of the list at 'offset' in 'lists', as trees of objects
+	private List<Stmt> stmts(int offset) {
+		var stmts = new Stmt[lists[offset]];
+		for (var i = 0; i < stmts.length; i++)
+			stmts[i] = (Stmt) node(lists[offset + 1 + i], true);
+		return Arrays.asList(stmts);
+	}
+
+	// view of a node of the pool
+	private final class Node implements Exp, Stmt, StmtSeq {
+		private final int index;
+
+		Node(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public <T> T accept(Visitor<T> visitor) {
+			if (kinds[index] == LIST) // without copying the list, as StmtList would do
+				return visitor.visitStmtList(new Stmts(args[index]));
+			return node(index, false).accept(visitor);
+		}
+
+		@Override
+		public String toString() {
+			return node(index, false).toString();
+		}
+	}
+
+	// view of the statements of the list at 'offset' in 'lists'
+	private final class Stmts extends AbstractList<Stmt> implements RandomAccess {
+		private final int offset;
+
+		Stmts(int offset) {
+			this.offset = offset;
+		}
+
+		@Override
+		public Stmt get(int index) {
+			return new Node(lists[offset + 1 + Objects.checkIndex(index, size())]);
+		}
+
+		@Override
+		public int size() {
+			return lists[offset];
+		}
+	}
+}
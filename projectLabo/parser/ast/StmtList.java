@@ -0,0 +1,29 @@
+package projectLabo.parser.ast;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import projectLabo.visitors.Visitor;
+
+/*
+ * sequence of statements stored as a flat list: visitors walk it with a loop, so the depth of the
+ * Java stack depends only on the nesting of blocks and not on the number of statements
+ */
+public class StmtList implements StmtSeq {
+	private final List<Stmt> stmts;
+
+	public StmtList(List<Stmt> stmts) {
+		this.stmts = List.copyOf(stmts); // immutable and array-based, rejects null statements
+	}
+
+	@Override
+	public String toString() {
+		return stmts.stream().map(String::valueOf)
+				.collect(Collectors.joining(",", getClass().getSimpleName() + "(", ")"));
+	}
+
+	@Override
+	public <T> T accept(Visitor<T> visitor) {
+		return visitor.visitStmtList(stmts);
+	}
+}
@@ -0,0 +1,43 @@
+package projectLabo.parser.ast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/*
+ * symbol table of the names of the variables of a program: each distinct name is interned once and
+ * gets a dense id, starting from 0, so that variables are compared and hashed as ints and environments
+ * can be arrays indexed by id (see Environment), as large as the number of names of the program
+ *
+ * a table is owned by the parser of a program, and shared by the parsers of its parts in the -watch
+ * mode, so that the parts parsed again get the same ids; the variables of different tables must not be
+ * mixed
+ */
+public final class Symbols {
+
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private String[] names = new String[64]; // interned names, by id
+
+	// the id of 'name', which is added to the table if it is new
+	public int id(String name) {
+		var id = ids.get(name);
+		if (id != null)
+			return id;
+		var count = ids.size();
+		if (count == names.length)
+			names = Arrays.copyOf(names, 2 * count);
+		names[count] = name;
+		ids.put(name, count);
+		return count;
+	}
+
+	// the interned name with id 'id'
+	public String name(int id) {
+		return names[Objects.checkIndex(id, ids.size())];
+	}
+
+	// number of names in the table, all ids are less than it
+	public int count() {
+		return ids.size();
+	}
+}
@@ -4,15 +4,64 @@ import static java.util.Objects.requireNonNull;
 
 import projectLabo.visitors.Visitor;
 
-public record Variable(String name) implements NamedElement, Exp {
+public class Variable implements NamedElement, Exp {
 
-	public Variable {
-		requireNonNull(name);
+	private final int id; // del nome nella tabella dei simboli, le variabili vengono confrontate con esso
+	private final String name;
+	private int depth = -1; // coordinate statiche, assegnate dal resolver
+	private int slot = -1;
+
+	// il nome viene aggiunto alla tabella dei simboli 'symbols' del programma
+	public Variable(String name, Symbols symbols) {
+		this.id = symbols.id(requireNonNull(name));
+		this.name = symbols.name(id); // un solo String per ogni nome
+	}
+
+	// variabile con l'id 'id' del nome 'name', gia' aggiunto alla tabella dei simboli
+	Variable(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	@Override
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public int id() {
+		return id;
+	}
+
+	@Override
+	public int depth() {
+		return depth;
+	}
+
+	@Override
+	public int slot() {
+		return slot;
+	}
+
+	// assegna le coordinate statiche (depth, slot); (-1, -1) se la variabile non e' dichiarata
+	public void resolve(int depth, int slot) {
+		this.depth = depth;
+		this.slot = slot;
+	}
+
+	@Override
+	public boolean equals(Object obj) { // due variabili sono uguali se hanno lo stesso nome, cioe' lo stesso id
+		return obj instanceof Variable var && id == var.id;
+	}
+
+	@Override
+	public int hashCode() {
+		return id;
 	}
 
 	@Override
 	public String toString() {
-		return String.format("%s(%s)", getClass().getSimpleName(), name);
+		return String.format("%s(%s)", Variable.class.getSimpleName(), name); // anche per le variabili di NodePool
 	}
 
 	@Override
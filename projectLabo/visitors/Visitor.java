@@ -1,5 +1,6 @@
 package projectLabo.visitors;
 
+import java.util.List;
 import projectLabo.parser.ast.*;
 
 public interface Visitor<T> {
@@ -7,9 +8,7 @@ public interface Visitor<T> {
 
 	T visitLangProg(StmtSeq stmtSeq);
 
-	T visitEmptyStmtSeq();
-
-	T visitNonEmptyStmtSeq(Stmt first, StmtSeq rest);
+	T visitStmtList(List<Stmt> stmts);
 
 	T visitIfStmt(Exp exp, Block thenBlock, Block elseBlock);
 
@@ -49,4 +48,9 @@ public interface Visitor<T> {
 
 	T visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp); // Visitor per Dictionary
 
+	// espressione invariante di un ciclo, per default visitata come l'espressione che contiene
+	default T visitInvariant(Exp exp, int id, int loopDepth) {
+		return exp.accept(this);
+	}
+
 }
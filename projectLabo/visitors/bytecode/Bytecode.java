@@ -0,0 +1,10 @@
+package projectLabo.visitors.bytecode;
+
+import projectLabo.visitors.execution.Value;
+
+/*
+ * compiled program: flat instruction stream, constant pool, messages of the environment errors
+ * detected at compile time, and the sizes of the value stack, of the local slots and of the iterators
+ */
+public record Bytecode(int[] code, Value[] constants, String[] messages, int maxStack, int locals, int iterators) {
+}
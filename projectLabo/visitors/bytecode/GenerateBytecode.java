@@ -0,0 +1,370 @@
+package projectLabo.visitors.bytecode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Prog;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+import projectLabo.visitors.execution.BoolValue;
+import projectLabo.visitors.execution.IntValue;
+import projectLabo.visitors.execution.Projections;
+import projectLabo.visitors.execution.Value;
+import static projectLabo.visitors.bytecode.Opcodes.*;
+
+/*
+ * compiles a program into the flat instruction stream executed by 'VirtualMachine'
+ *
+ * nested levels exist only at compile time: every declaration gets its own local slot, derived
+ * from the static coordinates assigned by Resolve, slots are reused once the level of the
+ * declaration is closed; 'if' becomes conditional jumps
+ * and 'for' becomes a loop over the iterator opcodes, so the virtual machine never recurses
+ *
+ * environment errors (undeclared or already declared variables) are detected at compile time
+ * and compiled into ERROR instructions, placed where Execute would raise them
+ */
+public class GenerateBytecode implements Visitor<Void> {
+
+	private int[] code = new int[64];
+	private int size; // number of ints in the instruction stream
+	private final ArrayList<Value> constants = new ArrayList<>();
+	private final HashMap<Value, Integer> constantIndexes = new HashMap<>();
+	private final ArrayList<String> messages = new ArrayList<>();
+
+	/*
+	 * compile-time levels, innermost at index 'top': the slots of a level start after those of the
+	 * levels enclosing it, and a variable with coordinates (depth, slot) assigned by Resolve is
+	 * stored in 'bases[top - depth] + slot'
+	 */
+	private int[] bases = new int[16]; // first slot of each level
+	private int[] counts = new int[16]; // variables declared so far in each level
+	private int top;
+	private int maxSlots;
+	private int iterators; // number of nested 'for' loops at the current point
+	private int maxIterators;
+	private int stackHeight;
+	private int maxStack;
+
+	private GenerateBytecode() {
+	}
+
+	// 'prog' must have been resolved by Resolve
+	public static Bytecode generate(Prog prog) {
+		var generator = new GenerateBytecode();
+		prog.accept(generator);
+		return new Bytecode(Arrays.copyOf(generator.code, generator.size), generator.constants.toArray(new Value[0]),
+				generator.messages.toArray(new String[0]), generator.maxStack, generator.maxSlots, generator.maxIterators);
+	}
+
+	// emission of instructions
+
+	private void emit(int opcode, int... operands) {
+		if (operands.length != OPERANDS[opcode])
+			throw new IllegalArgumentException("Wrong number of operands for opcode " + opcode);
+		if (size + 1 + operands.length > code.length)
+			code = Arrays.copyOf(code, 2 * code.length + operands.length);
+		code[size++] = opcode;
+		for (var operand : operands)
+			code[size++] = operand;
+		stackHeight += STACK_EFFECT[opcode];
+		maxStack = Math.max(maxStack, stackHeight);
+	}
+
+	// emits a jump whose target is not known yet, returns the position of the target to be patched
+	private int emitJump(int opcode) {
+		emit(opcode, -1);
+		return size - 1;
+	}
+
+	private void patch(int position) {
+		code[position] = size;
+	}
+
+	private void emitConstant(Value value) {
+		var index = constantIndexes.get(value);
+		if (index == null) {
+			index = constants.size();
+			constants.add(value);
+			constantIndexes.put(value, index);
+		}
+		emit(CONST, index);
+	}
+
+	private void emitError(String message) {
+		messages.add(message);
+		emit(ERROR, messages.size() - 1);
+	}
+
+	// same messages of the environment
+	private void emitUndeclared(Variable var) {
+		emitError("Enviroment.java - Undeclared " + var);
+	}
+
+	// compile-time levels
+
+	private void enterLevel() {
+		if (++top == bases.length) {
+			bases = Arrays.copyOf(bases, 2 * top);
+			counts = Arrays.copyOf(counts, 2 * top);
+		}
+		bases[top] = bases[top - 1] + counts[top - 1];
+		counts[top] = 0;
+	}
+
+	private void exitLevel() {
+		top--; // the slots of the closed level can be reused
+	}
+
+	/*
+	 * declares 'var' in the innermost level, returns its slot or -1 if it is already declared; Resolve
+	 * gives the next slot of the level to a new variable, and the slot of the previous declaration
+	 * to a variable declared again
+	 */
+	private int declare(Variable var) {
+		if (var.slot() < counts[top])
+			return -1;
+		var slot = bases[top] + counts[top]++;
+		maxSlots = Math.max(maxSlots, slot + 1);
+		return slot;
+	}
+
+	// slot of 'var' from its static coordinates, -1 if 'var' is not declared
+	private int lookup(Variable var) {
+		return var.depth() < 0 ? -1 : bases[top - var.depth()] + var.slot();
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Void visitLangProg(StmtSeq stmtSeq) {
+		stmtSeq.accept(this);
+		emit(HALT);
+		return null;
+	}
+
+	@Override
+	public Void visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			stmt.accept(this);
+		return null;
+	}
+
+	// statements
+
+	@Override
+	public Void visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		exp.accept(this);
+		var toElse = emitJump(JUMP_IF_FALSE);
+		thenBlock.accept(this);
+		if (elseBlock == null) {
+			patch(toElse);
+			return null;
+		}
+		var toEnd = emitJump(JUMP);
+		patch(toElse);
+		elseBlock.accept(this);
+		patch(toEnd);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Exp exp) {
+		exp.accept(this);
+		emit(PRINT);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Variable var, Exp exp) {
+		exp.accept(this);
+		var slot = declare(var);
+		if (slot >= 0)
+			emit(STORE, slot);
+		else {
+			emit(POP);
+			emitError("Enviroment.java -  " + var + " already declared");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBlock(StmtSeq stmtSeq) {
+		enterLevel();
+		stmtSeq.accept(this);
+		exitLevel();
+		return null;
+	}
+
+	@Override
+	public Void visitAssignStmt(Variable var, Exp exp) {
+		exp.accept(this);
+		var slot = lookup(var);
+		if (slot >= 0)
+			emit(STORE, slot);
+		else {
+			emit(POP);
+			emitUndeclared(var);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitForStmt(Variable var, Exp exp, Block forBlock) {
+		exp.accept(this);
+		var iterator = iterators++;
+		maxIterators = Math.max(maxIterators, iterators);
+		emit(ITER_INIT, iterator);
+		enterLevel(); // level of the loop variable
+		var slot = declare(var);
+		var loop = size;
+		// the loop variable is a reused LoopEntry if the body only projects it
+		emit(Projections.onlyProjected(var, forBlock) ? ITER_NEXT_ENTRY : ITER_NEXT, iterator, slot, -1);
+		var toEnd = size - 1;
+		forBlock.accept(this);
+		emit(JUMP, loop);
+		patch(toEnd);
+		exitLevel();
+		iterators--;
+		return null;
+	}
+
+	// expressions; operands are checked as soon as they are evaluated, as in Execute
+
+	@Override
+	public Void visitAdd(Exp left, Exp right) {
+		left.accept(this);
+		emit(CHECK_INT);
+		right.accept(this);
+		emit(CHECK_INT);
+		emit(ADD);
+		return null;
+	}
+
+	@Override
+	public Void visitBoolLiteral(boolean value) {
+		emitConstant(BoolValue.of(value));
+		return null;
+	}
+
+	@Override
+	public Void visitEq(Exp left, Exp right) {
+		left.accept(this);
+		right.accept(this);
+		emit(EQ);
+		return null;
+	}
+
+	@Override
+	public Void visitFst(Exp exp) {
+		exp.accept(this);
+		emit(FST);
+		return null;
+	}
+
+	@Override
+	public Void visitIntLiteral(int value) {
+		emitConstant(IntValue.of(value));
+		return null;
+	}
+
+	@Override
+	public Void visitMinus(Exp exp) {
+		exp.accept(this);
+		emit(NEG);
+		return null;
+	}
+
+	@Override
+	public Void visitMul(Exp left, Exp right) {
+		left.accept(this);
+		emit(CHECK_INT);
+		right.accept(this);
+		emit(CHECK_INT);
+		emit(MUL);
+		return null;
+	}
+
+	@Override
+	public Void visitPairLit(Exp left, Exp right) {
+		left.accept(this);
+		right.accept(this);
+		emit(PAIR);
+		return null;
+	}
+
+	@Override
+	public Void visitSnd(Exp exp) {
+		exp.accept(this);
+		emit(SND);
+		return null;
+	}
+
+	@Override
+	public Void visitVariable(Variable var) {
+		var slot = lookup(var);
+		if (slot >= 0)
+			emit(LOAD, slot);
+		else {
+			emitUndeclared(var);
+			stackHeight++; // the value is never pushed, but the following code expects it
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitNot(Exp exp) {
+		exp.accept(this);
+		emit(NOT);
+		return null;
+	}
+
+	@Override
+	public Void visitAnd(Exp left, Exp right) {
+		left.accept(this);
+		var toFalse = emitJump(JUMP_IF_FALSE);
+		right.accept(this);
+		emit(TO_BOOL);
+		var toEnd = emitJump(JUMP);
+		patch(toFalse);
+		stackHeight--; // the two branches leave a single value on the stack
+		emitConstant(BoolValue.FALSE);
+		patch(toEnd);
+		return null;
+	}
+
+	@Override
+	public Void visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		if (op == Dict.DictOp.CREATE) {
+			keyExp.accept(this);
+			valueExp.accept(this);
+			emit(DICT_CREATE);
+			return null;
+		}
+		if (op == Dict.DictOp.RANGE) {
+			dictExp.accept(this);
+			keyExp.accept(this);
+			valueExp.accept(this);
+			emit(DICT_RANGE);
+			return null;
+		}
+		dictExp.accept(this);
+		emit(CHECK_DICT);
+		keyExp.accept(this);
+		emit(CHECK_KEY);
+		switch (op) {
+		case GET -> emit(DICT_GET);
+		case DELETE -> emit(DICT_DELETE);
+		default -> {
+			valueExp.accept(this);
+			emit(DICT_UPDATE);
+		}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,48 @@
+package projectLabo.visitors.bytecode;
+
+/*
+ * instruction set of the virtual machine; every instruction is an opcode followed by its operands,
+ * all stored in the same int[] stream
+ */
+final class Opcodes {
+
+	private Opcodes() {
+	}
+
+	static final int HALT = 0; // end of the program
+	static final int CONST = 1; // CONST idx: pushes constants[idx]
+	static final int LOAD = 2; // LOAD slot: pushes locals[slot]
+	static final int STORE = 3; // STORE slot: pops into locals[slot]
+	static final int POP = 4;
+	static final int CHECK_INT = 5; // fails if the top of the stack is not an integer
+	static final int ADD = 6;
+	static final int MUL = 7;
+	static final int NEG = 8;
+	static final int EQ = 9;
+	static final int NOT = 10;
+	static final int TO_BOOL = 11; // fails if the top of the stack is not a boolean
+	static final int PAIR = 12;
+	static final int FST = 13;
+	static final int SND = 14;
+	static final int DICT_CREATE = 15;
+	static final int CHECK_DICT = 16; // fails if the top of the stack is not a dictionary
+	static final int CHECK_KEY = 17; // fails if the top of the stack is not a valid key
+	static final int DICT_GET = 18;
+	static final int DICT_DELETE = 19;
+	static final int DICT_UPDATE = 20;
+	static final int PRINT = 21;
+	static final int JUMP = 22; // JUMP target
+	static final int JUMP_IF_FALSE = 23; // JUMP_IF_FALSE target: pops a boolean
+	static final int ITER_INIT = 24; // ITER_INIT it: pops a dictionary and starts iterator 'it'
+	static final int ITER_NEXT = 25; // ITER_NEXT it slot target: stores the next pair in 'slot', jumps to 'target' at the end
+	static final int ERROR = 26; // ERROR idx: fails with the environment error messages[idx]
+	static final int DICT_RANGE = 27; // pops the bounds and the value of a range dictionary
+	static final int ITER_NEXT_ENTRY = 28; // as ITER_NEXT, but stores in 'slot' a LoopEntry reused by all the iterations
+
+	// number of operands of each opcode
+	static final int[] OPERANDS = { 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 3, 1, 0, 3 };
+
+	// effect of each opcode on the height of the stack
+	static final int[] STACK_EFFECT = { 0, 1, 1, -1, -1, 0, -1, -1, 0, -1, 0, 0, -1, 0, 0, -1, 0, 0, -1, -1, -2, -1, 0,
+			-1, -1, 0, 0, -2, 0 };
+}
@@ -0,0 +1,176 @@
+package projectLabo.visitors.bytecode;
+
+import java.io.PrintWriter;
+import static java.util.Objects.requireNonNull;
+import projectLabo.environments.EnvironmentException;
+import projectLabo.visitors.execution.BoolValue;
+import projectLabo.visitors.execution.DictCursor;
+import projectLabo.visitors.execution.DictValue;
+import projectLabo.visitors.execution.IntValue;
+import projectLabo.visitors.execution.LoopEntry;
+import projectLabo.visitors.execution.InterpreterException;
+import projectLabo.visitors.execution.PairValue;
+import projectLabo.visitors.execution.Value;
+import static projectLabo.visitors.bytecode.Opcodes.*;
+
+/*
+ * stack-based virtual machine executing the code produced by 'GenerateBytecode'
+ *
+ * the instruction stream is a flat int[] walked by a single dispatch loop, without recursion
+ * and without allocating environment levels; Java has no computed goto, hence the dispatch is
+ * a switch on the opcode, which the JIT compiles into a jump table
+ *
+ * the semantics (evaluation order and error messages) is the same of Execute
+ */
+public class VirtualMachine {
+
+	private final PrintWriter printWriter; // output stream used to print values
+
+	public VirtualMachine() {
+		printWriter = new PrintWriter(System.out, true);
+	}
+
+	public VirtualMachine(PrintWriter printWriter) {
+		this.printWriter = requireNonNull(printWriter);
+	}
+
+	private static int checkKey(Value keyVal) {
+		if (!(keyVal instanceof IntValue))
+			throw new InterpreterException("dict keys must be integers");
+		return keyVal.toInt();
+	}
+
+	public void run(Bytecode bytecode) {
+		final var code = bytecode.code();
+		final var constants = bytecode.constants();
+		final var stack = new Value[bytecode.maxStack()];
+		final var locals = new Value[bytecode.locals()];
+		final var iterators = new DictCursor[bytecode.iterators()];
+		final var entries = new LoopEntry[bytecode.iterators()]; // of the loops that use ITER_NEXT_ENTRY, created lazily
+		var sp = 0; // first free position of the stack
+		var pc = 0;
+		while (true) {
+			switch (code[pc++]) {
+			case HALT -> {
+				return;
+			}
+			case CONST -> stack[sp++] = constants[code[pc++]];
+			case LOAD -> stack[sp++] = locals[code[pc++]];
+			case STORE -> {
+				locals[code[pc++]] = stack[--sp];
+				stack[sp] = null;
+			}
+			case POP -> stack[--sp] = null;
+			case CHECK_INT -> stack[sp - 1].toInt();
+			case ADD -> {
+				sp--;
+				stack[sp - 1] = IntValue.of(stack[sp - 1].toInt() + stack[sp].toInt());
+				stack[sp] = null;
+			}
+			case MUL -> {
+				sp--;
+				stack[sp - 1] = IntValue.of(stack[sp - 1].toInt() * stack[sp].toInt());
+				stack[sp] = null;
+			}
+			case NEG -> stack[sp - 1] = IntValue.of(-stack[sp - 1].toInt());
+			case EQ -> {
+				sp--;
+				stack[sp - 1] = BoolValue.of(stack[sp - 1].equals(stack[sp]));
+				stack[sp] = null;
+			}
+			case NOT -> stack[sp - 1] = BoolValue.of(!stack[sp - 1].toBool());
+			case TO_BOOL -> stack[sp - 1].toBool();
+			case PAIR -> {
+				sp--;
+				stack[sp - 1] = new PairValue(stack[sp - 1], stack[sp]);
+				stack[sp] = null;
+			}
+			case FST -> stack[sp - 1] = LoopEntry.fst(stack[sp - 1]);
+			case SND -> stack[sp - 1] = LoopEntry.snd(stack[sp - 1]);
+			case DICT_CREATE -> {
+				sp--;
+				stack[sp - 1] = new DictValue().update(checkKey(stack[sp - 1]), stack[sp]);
+				stack[sp] = null;
+			}
+			case DICT_RANGE -> {
+				sp -= 2;
+				var low = checkKey(stack[sp - 1]);
+				stack[sp - 1] = DictValue.range(low, checkKey(stack[sp]), stack[sp + 1]);
+				stack[sp] = stack[sp + 1] = null;
+			}
+			case CHECK_DICT -> {
+				if (!(stack[sp - 1] instanceof DictValue))
+					throw new InterpreterException("Expected a dictionary in dict operation.");
+			}
+			case CHECK_KEY -> checkKey(stack[sp - 1]);
+			case DICT_GET -> {
+				sp--;
+				var key = stack[sp].toInt();
+				var value = ((DictValue) stack[sp - 1]).get(key);
+				if (value == null)
+					throw new InterpreterException("Missing key " + key);
+				stack[sp - 1] = value;
+				stack[sp] = null;
+			}
+			case DICT_DELETE -> {
+				sp--;
+				var key = stack[sp].toInt();
+				var dict = (DictValue) stack[sp - 1];
+				if (!dict.containsKey(key))
+					throw new InterpreterException("Missing key " + key);
+				stack[sp - 1] = dict.delete(key);
+				stack[sp] = null;
+			}
+			case DICT_UPDATE -> {
+				sp -= 2;
+				stack[sp - 1] = ((DictValue) stack[sp - 1]).update(stack[sp].toInt(), stack[sp + 1]);
+				stack[sp] = stack[sp + 1] = null;
+			}
+			case PRINT -> {
+				printWriter.println(stack[--sp]);
+				stack[sp] = null;
+			}
+			case JUMP -> pc = code[pc];
+			case JUMP_IF_FALSE -> {
+				var cond = stack[--sp].toBool();
+				stack[sp] = null;
+				pc = cond ? pc + 1 : code[pc];
+			}
+			case ITER_INIT -> {
+				if (!(stack[--sp] instanceof DictValue dictVal))
+					throw new InterpreterException("expected a dictionary in 'for' loop.");
+				stack[sp] = null;
+				iterators[code[pc++]] = dictVal.cursor();
+			}
+			case ITER_NEXT -> {
+				var it = code[pc];
+				var cursor = iterators[it];
+				if (cursor.next()) {
+					locals[code[pc + 1]] = new PairValue(IntValue.of(cursor.key()), cursor.value());
+					pc += 3;
+				} else {
+					iterators[it] = null;
+					pc = code[pc + 2];
+				}
+			}
+			case ITER_NEXT_ENTRY -> {
+				var it = code[pc];
+				var cursor = iterators[it];
+				if (cursor.next()) {
+					var entry = entries[it];
+					if (entry == null)
+						entry = entries[it] = new LoopEntry();
+					entry.set(cursor.key(), cursor.value());
+					locals[code[pc + 1]] = entry;
+					pc += 3;
+				} else {
+					iterators[it] = null;
+					pc = code[pc + 2];
+				}
+			}
+			case ERROR -> throw new InterpreterException(new EnvironmentException(bytecode.messages()[code[pc]]));
+			default -> throw new IllegalStateException("Unknown opcode " + code[pc - 1]);
+			}
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package projectLabo.visitors.codegen;
+
+import java.io.PrintWriter;
+
+/* interface implemented by the classes generated at run time by the JVM backend */
+public interface CompiledProgram {
+
+	// executes the program, values are printed on 'out'
+	void run(PrintWriter out);
+}
@@ -0,0 +1,384 @@
+package projectLabo.visitors.codegen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+import projectLabo.visitors.typechecking.DictType;
+import projectLabo.visitors.typechecking.PairType;
+import projectLabo.visitors.typechecking.Type;
+import projectLabo.visitors.typechecking.Typecheck;
+import static projectLabo.visitors.typechecking.AtomicType.*;
+
+/*
+ * translates a typechecked program into the source of a Java class implementing 'CompiledProgram';
+ * expressions are visited into Java expressions, statements are appended to the body of a method
+ *
+ * every variable becomes a Java variable whose type follows the static type: INT and BOOL become int
+ * and boolean, pairs and dictionaries become PairValue and DictValue; values are boxed only when
+ * stored into pairs and dictionaries
+ *
+ * the top-level statements are split among methods of at most METHOD_LINES lines, called in order by
+ * 'run', since the bytecode of a method cannot exceed 64KB; hence the top-level variables cannot be
+ * local variables and become elements of an array of fields, one for each Java type, which unlike
+ * a field for each variable do not fill the constant pool of the class; the other variables are
+ * local variables with a unique name
+ */
+public class GenerateJava implements Visitor<String> {
+
+	public static final String CLASS_NAME = "LangProgram";
+	private static final int METHOD_LINES = 500; // lines after which the next top-level statement starts a new method
+
+	/*
+	 * local variable corresponding to a variable of the program; the variable of a 'for' loop
+	 * that is never assigned in the loop body is not materialized as a pair: 'keyName' and
+	 * 'valueName' are the key and the value of the current association
+	 */
+	private static final class Local {
+		final String name;
+		final String keyName;
+		final String valueName;
+		boolean assigned;
+
+		Local(String name, String keyName, String valueName) {
+			this.name = name;
+			this.keyName = keyName;
+			this.valueName = valueName;
+		}
+
+		boolean isSplit() {
+			return keyName != null;
+		}
+	}
+
+	private final Typecheck typecheck;
+	private final StringBuilder code = new StringBuilder();
+	private final ArrayList<HashMap<String, Local>> levels = new ArrayList<>();
+	private int indent = 2;
+	private int counter; // used to generate unique names
+	private int methods = 1; // methods of the top-level statements, the last one is being generated
+	private int methodLines; // lines of the last method
+	private int ints, bools, pairs, dicts; // elements of the arrays of the top-level variables
+
+	public GenerateJava(Typecheck typecheck) {
+		this.typecheck = requireNonNull(typecheck);
+		levels.add(new HashMap<>());
+	}
+
+	// source of the generated class
+	public String source() {
+		var calls = new StringBuilder();
+		for (var i = 0; i < methods; i++)
+			calls.append(String.format("\t\tpart%d();%n", i));
+		return String.format("""
+				import projectLabo.visitors.codegen.*;
+				import projectLabo.visitors.execution.*;
+
+				public final class %s implements CompiledProgram {
+					private java.io.PrintWriter out;
+					private final int[] ints = new int[%d];
+					private final boolean[] bools = new boolean[%d];
+					private final PairValue[] pairs = new PairValue[%d];
+					private final DictValue[] dicts = new DictValue[%d];
+
+					@Override
+					public void run(java.io.PrintWriter out) {
+						this.out = out;
+				%s	}
+
+					private void part0() {
+				%s	}
+				}
+				""", CLASS_NAME, ints, bools, pairs, dicts, calls, code);
+	}
+
+	// utility methods
+
+	private void line(String line) {
+		code.append("\t".repeat(indent)).append(line).append('\n');
+		methodLines++;
+	}
+
+	// ends the method of the previous top-level statements and starts the next one
+	private void nextMethod() {
+		code.append(String.format("\t}%n%n\tprivate void part%d() {%n", methods++));
+		methodLines = 0;
+	}
+
+	// element of the array of the top-level variables of type 'type'
+	private String topLevel(Type type) {
+		if (type == INT)
+			return "ints[" + ints++ + "]";
+		if (type == BOOL)
+			return "bools[" + bools++ + "]";
+		if (type instanceof PairType)
+			return "pairs[" + pairs++ + "]";
+		return "dicts[" + dicts++ + "]";
+	}
+
+	private String fresh(String name) {
+		return String.format("v%d_%s", counter++, name);
+	}
+
+	private Type typeOf(Exp exp) {
+		var type = typecheck.typeOf(exp);
+		if (type == null)
+			throw new IllegalStateException("Missing static type for " + exp);
+		return type;
+	}
+
+	private void declare(Variable var, Local local) {
+		levels.get(levels.size() - 1).put(var.name(), local);
+	}
+
+	private Local lookup(Variable var) {
+		for (var i = levels.size() - 1; i >= 0; i--) {
+			var local = levels.get(i).get(var.name());
+			if (local != null)
+				return local;
+		}
+		throw new IllegalStateException("Undeclared " + var);
+	}
+
+	// the loop variable of an enclosing 'for', if 'exp' is such a variable not materialized as a pair
+	private Local splitLocal(Exp exp) {
+		if (exp instanceof Variable var) {
+			var local = lookup(var);
+			if (local.isSplit())
+				return local;
+		}
+		return null;
+	}
+
+	private static String javaType(Type type) {
+		if (type == INT)
+			return "int";
+		if (type == BOOL)
+			return "boolean";
+		return type instanceof PairType ? "PairValue" : "DictValue";
+	}
+
+	// converts the Java representation of a value of type 'type' into a Value
+	private static String box(String code, Type type) {
+		if (type == INT)
+			return "IntValue.of(" + code + ")";
+		if (type == BOOL)
+			return "BoolValue.of(" + code + ")";
+		return code;
+	}
+
+	// converts a Value of type 'type' into its Java representation
+	private static String unbox(String code, Type type) {
+		if (type == INT)
+			return code + ".toInt()";
+		if (type == BOOL)
+			return code + ".toBool()";
+		if (type instanceof PairType)
+			return code + ".toPair()";
+		return "((DictValue) " + code + ")";
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public String visitLangProg(StmtSeq stmtSeq) {
+		stmtSeq.accept(this);
+		return null;
+	}
+
+	@Override
+	public String visitStmtList(List<Stmt> stmts) {
+		var topLevel = levels.size() == 1; // blocks and loops enter a level before their statements
+		for (var stmt : stmts) {
+			if (topLevel && methodLines >= METHOD_LINES)
+				nextMethod();
+			stmt.accept(this);
+		}
+		return null;
+	}
+
+	// statements
+
+	@Override
+	public String visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		line("if (" + exp.accept(this) + ")");
+		thenBlock.accept(this);
+		if (elseBlock != null) {
+			line("else");
+			elseBlock.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public String visitPrintStmt(Exp exp) {
+		line("out.println(" + exp.accept(this) + ");");
+		return null;
+	}
+
+	@Override
+	public String visitVarStmt(Variable var, Exp exp) {
+		var value = exp.accept(this); // the initialization expression cannot see the declared variable
+		var type = typeOf(exp);
+		if (levels.size() == 1) {
+			var element = new Local(topLevel(type), null, null);
+			line(element.name + " = " + value + ";");
+			declare(var, element);
+			return null;
+		}
+		var local = new Local(fresh(var.name()), null, null);
+		line(javaType(type) + " " + local.name + " = " + value + ";");
+		declare(var, local);
+		return null;
+	}
+
+	@Override
+	public String visitBlock(StmtSeq stmtSeq) {
+		line("{");
+		indent++;
+		levels.add(new HashMap<>());
+		stmtSeq.accept(this);
+		levels.remove(levels.size() - 1);
+		indent--;
+		line("}");
+		return null;
+	}
+
+	@Override
+	public String visitAssignStmt(Variable var, Exp exp) {
+		var local = lookup(var);
+		local.assigned = true;
+		line(local.name + " = " + exp.accept(this) + ";");
+		return null;
+	}
+
+	@Override
+	public String visitForStmt(Variable var, Exp exp, Block forBlock) {
+		var valueType = ((DictType) typeOf(exp)).getValueType();
+		var cursor = fresh("cursor");
+		line("for (DictCursor " + cursor + " = " + exp.accept(this) + ".cursor(); " + cursor + ".next();) {");
+		indent++;
+		var start = code.length();
+		var split = new Local(fresh(var.name()), fresh("key"), fresh("value"));
+		forBody(var, split, forBlock, cursor);
+		if (split.assigned) { // the loop variable is assigned in the body, hence it must be a pair
+			code.setLength(start);
+			var pair = new Local(split.name, null, null);
+			line("PairValue " + pair.name + " = new PairValue(IntValue.of(" + cursor + ".key()), " + cursor
+					+ ".value());");
+			forBody(var, pair, forBlock, cursor);
+		}
+		indent--;
+		line("}");
+		return null;
+	}
+
+	private void forBody(Variable var, Local local, Block forBlock, String cursor) {
+		if (local.isSplit()) {
+			line("int " + local.keyName + " = " + cursor + ".key();");
+			line("Value " + local.valueName + " = " + cursor + ".value();");
+		}
+		levels.add(new HashMap<>());
+		declare(var, local);
+		forBlock.accept(this);
+		levels.remove(levels.size() - 1);
+	}
+
+	// expressions
+
+	@Override
+	public String visitAdd(Exp left, Exp right) {
+		return "(" + left.accept(this) + " + " + right.accept(this) + ")";
+	}
+
+	@Override
+	public String visitBoolLiteral(boolean value) {
+		return Boolean.toString(value);
+	}
+
+	@Override
+	public String visitEq(Exp left, Exp right) {
+		var type = typeOf(left);
+		if (type == INT || type == BOOL)
+			return "(" + left.accept(this) + " == " + right.accept(this) + ")";
+		return left.accept(this) + ".equals(" + right.accept(this) + ")";
+	}
+
+	@Override
+	public String visitFst(Exp exp) {
+		var local = splitLocal(exp);
+		if (local != null)
+			return local.keyName;
+		return unbox(exp.accept(this) + ".fstVal()", typeOf(exp).toPairType().fstType());
+	}
+
+	@Override
+	public String visitIntLiteral(int value) {
+		return Integer.toString(value);
+	}
+
+	@Override
+	public String visitMinus(Exp exp) {
+		return "(-" + exp.accept(this) + ")";
+	}
+
+	@Override
+	public String visitMul(Exp left, Exp right) {
+		return "(" + left.accept(this) + " * " + right.accept(this) + ")";
+	}
+
+	@Override
+	public String visitPairLit(Exp left, Exp right) {
+		return "new PairValue(" + box(left.accept(this), typeOf(left)) + ", " + box(right.accept(this), typeOf(right))
+				+ ")";
+	}
+
+	@Override
+	public String visitSnd(Exp exp) {
+		var sndType = typeOf(exp).toPairType().sndType();
+		var local = splitLocal(exp);
+		if (local != null)
+			return unbox(local.valueName, sndType);
+		return unbox(exp.accept(this) + ".sndVal()", sndType);
+	}
+
+	@Override
+	public String visitVariable(Variable var) {
+		var local = lookup(var);
+		if (local.isSplit())
+			return "new PairValue(IntValue.of(" + local.keyName + "), " + local.valueName + ")";
+		return local.name;
+	}
+
+	@Override
+	public String visitNot(Exp exp) {
+		return "(!" + exp.accept(this) + ")";
+	}
+
+	@Override
+	public String visitAnd(Exp left, Exp right) {
+		return "(" + left.accept(this) + " && " + right.accept(this) + ")";
+	}
+
+	@Override
+	public String visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		return switch (op) {
+		case CREATE -> "new DictValue().update(" + keyExp.accept(this) + ", " + box(valueExp.accept(this), typeOf(valueExp))
+				+ ")";
+		case GET -> unbox("Support.get(" + dictExp.accept(this) + ", " + keyExp.accept(this) + ")",
+				((DictType) typeOf(dictExp)).getValueType());
+		case DELETE -> "Support.delete(" + dictExp.accept(this) + ", " + keyExp.accept(this) + ")";
+		case RANGE -> "DictValue.range(" + dictExp.accept(this) + ", " + keyExp.accept(this) + ", "
+				+ box(valueExp.accept(this), typeOf(valueExp)) + ")";
+		case UPDATE -> dictExp.accept(this) + ".update(" + keyExp.accept(this) + ", "
+				+ box(valueExp.accept(this), typeOf(valueExp)) + ")";
+		};
+	}
+}
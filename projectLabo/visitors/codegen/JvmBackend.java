@@ -0,0 +1,125 @@
+package projectLabo.visitors.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import projectLabo.parser.ast.Prog;
+import projectLabo.visitors.typechecking.Typecheck;
+
+/*
+ * JVM backend: the typechecked program is translated by 'GenerateJava' and compiled in memory
+ * by the system Java compiler; the resulting class is loaded in the running JVM, so the program
+ * is executed as JIT-compiled bytecode instead of being interpreted
+ */
+public final class JvmBackend {
+
+	private JvmBackend() {
+	}
+
+	// source file kept in memory
+	private static final class Source extends SimpleJavaFileObject {
+		private final String code;
+
+		Source(String className, String code) {
+			super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+
+	// class file kept in memory
+	private static final class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ClassFile(String className) {
+			super(URI.create("bytes:///" + className + Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+	}
+
+	// loads the classes produced by the compiler
+	private static final class Loader extends ClassLoader {
+		private final HashMap<String, ClassFile> classes;
+
+		Loader(HashMap<String, ClassFile> classes) {
+			super(JvmBackend.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			var classFile = classes.get(name);
+			if (classFile == null)
+				throw new ClassNotFoundException(name);
+			var bytes = classFile.bytes.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	// the program is executed by the interpreter, the reason is reported on stderr
+	private static CompiledProgram fallBack(String reason) {
+		System.err.println("JVM backend: " + reason + ", the program is interpreted");
+		return null;
+	}
+
+	/*
+	 * compiles 'prog', which must have been typechecked by 'typecheck';
+	 * returns null if the program cannot be compiled, for instance because no Java compiler is available
+	 * or the generated code exceeds the limits of the JVM, in that case the caller falls back to 'Execute'
+	 */
+	public static CompiledProgram compile(Prog prog, Typecheck typecheck) {
+		var compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			return fallBack("no Java compiler available");
+		try {
+			var generator = new GenerateJava(typecheck);
+			prog.accept(generator);
+			var classes = new HashMap<String, ClassFile>();
+			var fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+					compiler.getStandardFileManager(null, null, null)) {
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+						FileObject sibling) {
+					var classFile = new ClassFile(className);
+					classes.put(className, classFile);
+					return classFile;
+				}
+			};
+			var source = new Source(GenerateJava.CLASS_NAME, generator.source());
+			var options = List.of("-proc:none", "-g:none", "-nowarn", "-classpath", System.getProperty("java.class.path"));
+			var errors = new ArrayList<String>();
+			var log = new StringWriter(); // messages without a diagnostic, as when javac runs out of memory
+			var task = compiler.getTask(log, fileManager, diagnostic -> {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+					errors.add(diagnostic.getMessage(null));
+			}, options, null, List.of(source));
+			if (!task.call()) {
+				var reason = !errors.isEmpty() ? errors.get(0) : log.toString().isBlank() ? "unknown error" : log.toString().strip();
+				return fallBack("the generated code does not compile (" + reason + ")");
+			}
+			var compiled = new Loader(classes).loadClass(GenerateJava.CLASS_NAME);
+			return (CompiledProgram) compiled.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | RuntimeException | StackOverflowError e) {
+			return fallBack("compilation failed (" + e + ")");
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package projectLabo.visitors.codegen;
+
+import projectLabo.visitors.execution.DictValue;
+import projectLabo.visitors.execution.InterpreterException;
+import projectLabo.visitors.execution.Value;
+
+/*
+ * operations called by the generated code that can fail at run time even if the program
+ * is well-typed; the error messages are the same as those of Execute
+ */
+public final class Support {
+
+	private Support() {
+	}
+
+	public static Value get(DictValue dict, int key) {
+		var value = dict.get(key);
+		if (value == null)
+			throw new InterpreterException("Missing key " + key);
+		return value;
+	}
+
+	public static DictValue delete(DictValue dict, int key) {
+		if (!dict.containsKey(key))
+			throw new InterpreterException("Missing key " + key);
+		return dict.delete(key);
+	}
+}
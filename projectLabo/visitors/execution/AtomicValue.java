@@ -1,30 +1,19 @@
 package projectLabo.visitors.execution;
 
-import static java.util.Objects.requireNonNull;
+public abstract class AtomicValue implements Value {
 
-public abstract class AtomicValue<T> implements Value {
-	protected T value; // T expected to be a built-in Java class
-
-	protected AtomicValue(T value) {
-		this.value = requireNonNull(value);
-	}
+	// rappresentazione primitiva del valore, usata da equals e hashCode senza passare per oggetti boxed
+	protected abstract int primitiveValue();
 
 	@Override
 	public final boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj instanceof AtomicValue<?> sv)
-			return value.equals(sv.value);
-		return false;
-	}
-	
-	@Override
-	public final int hashCode() {
-		return value.hashCode();
+		return obj instanceof AtomicValue sv && sv.getClass() == getClass() && sv.primitiveValue() == primitiveValue();
 	}
 
 	@Override
-	public String toString() {
-		return value.toString();
+	public final int hashCode() {
+		return primitiveValue();
 	}
-}
\ No newline at end of file
+}
@@ -1,9 +1,19 @@
 package projectLabo.visitors.execution;
 
-public class BoolValue extends AtomicValue<Boolean> {
+public class BoolValue extends AtomicValue {
 
-	public BoolValue(Boolean value) {
-		super(value);
+	// le uniche due istanze, condivise da tutte le espressioni booleane
+	public static final BoolValue TRUE = new BoolValue(true);
+	public static final BoolValue FALSE = new BoolValue(false);
+
+	private final boolean value;
+
+	private BoolValue(boolean value) {
+		this.value = value;
+	}
+
+	public static BoolValue of(boolean value) {
+		return value ? TRUE : FALSE;
 	}
 
 	@Override
@@ -11,4 +21,14 @@ public class BoolValue extends AtomicValue<Boolean> {
 		return value;
 	}
 
+	@Override
+	protected int primitiveValue() {
+		return Boolean.hashCode(value);
+	}
+
+	@Override
+	public String toString() {
+		return Boolean.toString(value);
+	}
+
 }
@@ -0,0 +1,345 @@
+package projectLabo.visitors.execution;
+
+import java.io.PrintWriter;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+import projectLabo.environments.EnvironmentException;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Prog;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+
+/*
+ * motore di esecuzione alternativo a Execute: il programma viene visitato una sola volta e tradotto
+ * in un albero di closure, le espressioni in 'Evaluator' e gli statement in 'Action';
+ * l'esecuzione non passa piu' per accept e per il double dispatch del visitor
+ *
+ * la semantica (ordine di valutazione e messaggi di errore) e' la stessa di Execute
+ */
+public class Compile implements Visitor<Compile.Code> {
+
+	interface Code { // risultato della compilazione di un nodo
+	}
+
+	@FunctionalInterface
+	interface Evaluator extends Code { // espressione compilata
+		Value eval();
+	}
+
+	@FunctionalInterface
+	interface Action extends Code { // statement compilato
+		void run();
+	}
+
+	// espressione costante, riconosciuta per specializzare gli operatori
+	private record Constant(Value value) implements Evaluator {
+		@Override
+		public Value eval() {
+			return value;
+		}
+	}
+
+	private final DynamicEnv env = new DynamicEnv();
+	private final PrintWriter printWriter; // output stream used to print values
+
+	public Compile() {
+		printWriter = new PrintWriter(System.out, true);
+	}
+
+	public Compile(PrintWriter printWriter) {
+		this.printWriter = requireNonNull(printWriter);
+	}
+
+	// compila il programma, il risultato puo' essere eseguito piu' volte
+	public Runnable compile(Prog prog) {
+		return ((Action) prog.accept(this))::run;
+	}
+
+	private Evaluator exp(Exp exp) {
+		return (Evaluator) exp.accept(this);
+	}
+
+	private Action stmt(Stmt stmt) {
+		return (Action) stmt.accept(this);
+	}
+
+	private Action block(Block block) {
+		return block == null ? null : (Action) block.accept(this);
+	}
+
+	// programs
+
+	@Override
+	public Action visitLangProg(StmtSeq stmtSeq) {
+		var body = (Action) stmtSeq.accept(this);
+		return () -> {
+			try {
+				body.run();
+			} catch (EnvironmentException e) { // undefined variable
+				throw new InterpreterException(e);
+			}
+		};
+	}
+
+	// sequences of statements
+
+	@Override
+	public Action visitStmtList(List<Stmt> stmts) {
+		var actions = new Action[stmts.size()];
+		for (var i = 0; i < actions.length; i++)
+			actions[i] = stmt(stmts.get(i));
+		return switch (actions.length) {
+		case 0 -> () -> {
+		};
+		case 1 -> actions[0];
+		case 2 -> {
+			var first = actions[0];
+			var second = actions[1];
+			yield () -> {
+				first.run();
+				second.run();
+			};
+		}
+		default -> () -> {
+			for (var action : actions)
+				action.run();
+		};
+		};
+	}
+
+	// statements
+
+	@Override
+	public Action visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		var cond = exp(exp);
+		var thenAction = block(thenBlock);
+		var elseAction = block(elseBlock);
+		if (elseAction == null)
+			return () -> {
+				if (cond.eval().toBool())
+					thenAction.run();
+			};
+		return () -> {
+			if (cond.eval().toBool())
+				thenAction.run();
+			else
+				elseAction.run();
+		};
+	}
+
+	@Override
+	public Action visitPrintStmt(Exp exp) {
+		var value = exp(exp);
+		return () -> printWriter.println(value.eval());
+	}
+
+	@Override
+	public Action visitVarStmt(Variable var, Exp exp) {
+		var value = exp(exp);
+		return () -> env.dec(var, value.eval());
+	}
+
+	@Override
+	public Action visitBlock(StmtSeq stmtSeq) {
+		var body = (Action) stmtSeq.accept(this);
+		return () -> {
+			env.enterLevel();
+			body.run();
+			env.exitLevel();
+		};
+	}
+
+	@Override
+	public Action visitAssignStmt(Variable var, Exp exp) {
+		var value = exp(exp);
+		return () -> env.update(var, value.eval());
+	}
+
+	@Override
+	public Action visitForStmt(Variable var, Exp exp, Block forBlock) {
+		var iterable = exp(exp);
+		var body = block(forBlock);
+		var projected = Projections.onlyProjected(var, forBlock); // vista pigra sull'associazione, vedi LoopEntry
+		return () -> {
+			if (!(iterable.eval() instanceof DictValue dictVal))
+				throw new InterpreterException("expected a dictionary in 'for' loop.");
+			env.enterLevel();
+			var entry = projected ? new LoopEntry() : null;
+			for (var i = dictVal.cursor(); i.next();) {
+				if (entry != null) {
+					entry.set(i.key(), i.value());
+					env.bind(var, entry);
+				} else
+					env.bind(var, new PairValue(IntValue.of(i.key()), i.value()));
+				body.run();
+			}
+			env.exitLevel();
+		};
+	}
+
+	// expressions
+
+	private static boolean isInt(Evaluator eval) {
+		return eval instanceof Constant c && c.value() instanceof IntValue;
+	}
+
+	@Override
+	public Evaluator visitAdd(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		if (isInt(l) && isInt(r))
+			return new Constant(IntValue.of(l.eval().toInt() + r.eval().toInt()));
+		if (isInt(r)) {
+			var n = r.eval().toInt();
+			return () -> IntValue.of(l.eval().toInt() + n);
+		}
+		return () -> IntValue.of(l.eval().toInt() + r.eval().toInt());
+	}
+
+	@Override
+	public Evaluator visitBoolLiteral(boolean value) {
+		return new Constant(BoolValue.of(value));
+	}
+
+	@Override
+	public Evaluator visitEq(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		return () -> BoolValue.of(l.eval().equals(r.eval()));
+	}
+
+	@Override
+	public Evaluator visitFst(Exp exp) {
+		var e = exp(exp);
+		return () -> LoopEntry.fst(e.eval());
+	}
+
+	@Override
+	public Evaluator visitIntLiteral(int value) {
+		return new Constant(IntValue.of(value));
+	}
+
+	@Override
+	public Evaluator visitMinus(Exp exp) {
+		var e = exp(exp);
+		if (isInt(e))
+			return new Constant(IntValue.of(-e.eval().toInt()));
+		return () -> IntValue.of(-e.eval().toInt());
+	}
+
+	@Override
+	public Evaluator visitMul(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		if (isInt(l) && isInt(r))
+			return new Constant(IntValue.of(l.eval().toInt() * r.eval().toInt()));
+		if (isInt(r)) {
+			var n = r.eval().toInt();
+			return () -> IntValue.of(l.eval().toInt() * n);
+		}
+		return () -> IntValue.of(l.eval().toInt() * r.eval().toInt());
+	}
+
+	@Override
+	public Evaluator visitPairLit(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		return () -> new PairValue(l.eval(), r.eval());
+	}
+
+	@Override
+	public Evaluator visitSnd(Exp exp) {
+		var e = exp(exp);
+		return () -> LoopEntry.snd(e.eval());
+	}
+
+	@Override
+	public Evaluator visitVariable(Variable var) {
+		return () -> env.lookup(var);
+	}
+
+	@Override
+	public Evaluator visitNot(Exp exp) {
+		var e = exp(exp);
+		return () -> BoolValue.of(!e.eval().toBool());
+	}
+
+	@Override
+	public Evaluator visitAnd(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		return () -> BoolValue.of(l.eval().toBool() && r.eval().toBool());
+	}
+
+	// stessi controlli e stessi messaggi di errore di Execute.visitDict
+
+	private static DictValue checkDict(Value dictVal) {
+		if (!(dictVal instanceof DictValue dict))
+			throw new InterpreterException("Expected a dictionary in dict operation.");
+		return dict;
+	}
+
+	private static int checkKey(Value keyVal) {
+		if (!(keyVal instanceof IntValue))
+			throw new InterpreterException("dict keys must be integers");
+		return keyVal.toInt();
+	}
+
+	private static void checkContains(DictValue dict, int key) {
+		if (!dict.containsKey(key))
+			throw new InterpreterException("Missing key " + key);
+	}
+
+	@Override
+	public Evaluator visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		var k = exp(keyExp);
+		if (op == Dict.DictOp.CREATE) {
+			var v = exp(valueExp);
+			return () -> {
+				var keyVal = k.eval();
+				var valueVal = v.eval();
+				return new DictValue().update(checkKey(keyVal), valueVal);
+			};
+		}
+		if (op == Dict.DictOp.RANGE) {
+			var l = exp(dictExp);
+			var v = exp(valueExp);
+			return () -> {
+				var lowVal = l.eval();
+				var highVal = k.eval();
+				var valueVal = v.eval();
+				return DictValue.range(checkKey(lowVal), checkKey(highVal), valueVal);
+			};
+		}
+		var d = exp(dictExp);
+		return switch (op) {
+		case GET -> () -> {
+			var dict = checkDict(d.eval());
+			var key = checkKey(k.eval());
+			var value = dict.get(key);
+			if (value == null)
+				throw new InterpreterException("Missing key " + key);
+			return value;
+		};
+		case DELETE -> () -> {
+			var dict = checkDict(d.eval());
+			var key = checkKey(k.eval());
+			checkContains(dict, key);
+			return dict.delete(key);
+		};
+		case UPDATE -> {
+			var v = exp(valueExp);
+			yield () -> {
+				var dict = checkDict(d.eval());
+				var key = checkKey(k.eval());
+				return dict.update(key, v.eval());
+			};
+		}
+		default -> throw new InterpreterException("Unsupported operation on dict");
+		};
+	}
+}
@@ -0,0 +1,15 @@
+package projectLabo.visitors.execution;
+
+/*
+ * cursore sulle associazioni di un dizionario, visitate in ordine crescente delle chiavi;
+ * prima di leggere la prima associazione bisogna chiamare next()
+ */
+public interface DictCursor {
+
+	// avanza alla prossima associazione, restituisce false se la visita e' terminata
+	boolean next();
+
+	int key();
+
+	Value value();
+}
@@ -1,44 +1,406 @@
 package projectLabo.visitors.execution;
 
-import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 public class DictValue implements Value {
-    private final TreeMap<Integer, Value> dict; // Creiamo il dizionario come Albero
+    /*
+     * la forma sparsa e' un albero persistente sullo heap oppure, per i dizionari grandi con solo valori interi
+     * o solo booleani, una mappa fuori dallo heap (vedi OffHeapMap) che non pesa sul garbage collector;
+     * la scelta avviene quando la forma sparsa viene costruita da un array denso o da un intervallo
+     */
+    private IntMap dict; // Dizionario persistente: ogni versione condivide la struttura con la precedente
 
-    public DictValue(){ // Costruttore
-        this.dict = new TreeMap<>();
+    /*
+     * un dizionario con chiavi quasi contigue e' denso: i valori stanno in un array indicizzato da chiave - base,
+     * con null per le chiavi assenti, quindi get costa O(1) e ogni associazione occupa circa un riferimento;
+     * finche' il dizionario e' di proprieta' esclusiva gli aggiornamenti modificano l'array, che cresce
+     * raddoppiando, mentre gli aggiornamenti funzionali copiano l'array solo se e' piccolo, altrimenti
+     * passano all'albero persistente (vedi tree()), che non richiede copie
+     *
+     * quando l'array dovrebbe avere meno di una posizione occupata ogni DENSITY il dizionario passa
+     * definitivamente alla forma sparsa, cioe' all'albero; il passaggio non e' visibile dall'esterno
+     */
+    private static final int DENSITY = 4;
+    private static final int SMALL = 64; // capacita' massima di un array denso copiato da un aggiornamento funzionale
+    private static final Value[] NO_VALUES = {};
+    private Value[] dense; // null se il dizionario non e' denso
+    private int base; // chiave della posizione 0 di 'dense'
+    private int count; // posizioni occupate di 'dense'
+
+    /*
+     * un dizionario creato con [low..high : value] e' virtuale: 'dict' resta null e le associazioni vengono
+     * calcolate quando sono lette, con memoria O(1); l'albero viene costruito solo al primo aggiornamento
+     * (vedi tree()) e da quel momento sostituisce l'intervallo
+     */
+    private final int low, high;
+    private final Value fill; // valore di tutte le chiavi dell'intervallo, null se il dizionario non e' virtuale
+
+    /*
+     * un dizionario "di proprieta'" e' raggiungibile solo dalla variabile a cui e' stato assegnato appena creato:
+     * in 'd = d[k:v]' la versione precedente non puo' piu' essere osservata, quindi puo' essere modificata sul posto;
+     * 'edit' e' il token con cui sono marcati i nodi dell'albero che appartengono solo a questo dizionario
+     */
+    private boolean owned;
+    private Object edit;
+
+    /*
+     * hash strutturale (stessa definizione di Map.hashCode): e' la somma degli hash delle associazioni,
+     * quindi UPDATE e DELETE lo aggiornano in O(1) aggiungendo e togliendo l'hash dell'associazione;
+     * anche l'hash dei valori e' gia' calcolato, quindi equals scarta in O(1) quasi tutti i dizionari diversi
+     */
+    private int hash;
+
+    public DictValue(){ // Costruttore, il dizionario vuoto e' denso
+        this(NO_VALUES, 0, 0, 0);
+    }
+
+    private DictValue(IntMap dict, int hash){ // Nuova versione del dizionario
+        this.dict = dict;
+        this.hash = hash;
+        this.low = this.high = 0;
+        this.fill = null;
+    }
+
+    private DictValue(Value[] dense, int base, int count, int hash){ // Dizionario denso
+        this.dense = dense;
+        this.base = base;
+        this.count = count;
+        this.hash = hash;
+        this.low = this.high = 0;
+        this.fill = null;
+    }
+
+    private DictValue(int low, int high, Value fill){ // Intervallo virtuale, pre-condizione: low <= high
+        this.low = low;
+        this.high = high;
+        this.fill = fill;
+        this.hash = rangeHash(low, high, fill.hashCode());
+    }
+
+    private static int entryHash(int key, Value value){ // stessa definizione di Map.Entry.hashCode
+        return Integer.hashCode(key) ^ value.hashCode();
+    }
+
+    // hash dopo aver associato 'value' a 'key', al posto di 'old' (null se la chiave non era presente)
+    private int hashAfter(int key, Value old, Value value){
+        return hash - (old == null ? 0 : entryHash(key, old)) + (value == null ? 0 : entryHash(key, value));
+    }
+
+    // somma di (k ^ h) per k da low a high in O(32): per ogni bit si contano le chiavi in cui vale 1
+    private static int rangeHash(int low, int high, int h){
+        var size = (long) high - low + 1;
+        var hash = 0;
+        for (var b = 0; b < 32; b++) {
+            var ones = ones(high, b) - ones(low - 1L, b);
+            var set = (h >>> b & 1) == 0 ? ones : size - ones; // il bit di h inverte quello delle chiavi
+            hash += (int) (set << b); // aritmetica modulo 2^32, come la somma degli hash
+        }
+        return hash;
+    }
+
+    // numero di interi da Integer.MIN_VALUE a 'x' con il bit 'b' a 1
+    private static long ones(long x, int b){
+        var count = x - Integer.MIN_VALUE + 1; // gli interi k sono contati come k - MIN_VALUE, che differisce solo nel bit 31
+        if (b == 31)
+            return Math.min(count, 1L << 31); // i negativi, cioe' i primi 2^31 interi
+        var period = 1L << (b + 1);
+        return (count / period << b) + Math.max(0, count % period - (1L << b));
+    }
+
+    // i dizionari con almeno 'size' associazioni intere o booleane sono rappresentati fuori dallo heap (vedi OffHeapMap)
+    public static void setOffHeapThreshold(int size){
+        OffHeapMap.setThreshold(size);
+    }
+
+    // dizionario [low..high : value], vuoto se high < low
+    public static DictValue range(int low, int high, Value value){
+        if (high < low)
+            return new DictValue();
+        if ((long) high - low >= Integer.MAX_VALUE)
+            throw new InterpreterException("Range " + low + ".." + high + " is too large");
+        return new DictValue(low, high, value);
+    }
+
+    /*
+     * l'albero del dizionario, costruito in O(n) se il dizionario e' virtuale o denso; l'albero (o i buffer
+     * di OffHeapMap, scritti prima della costruzione) e' raggiungibile da campi final, quindi anche se due worker
+     * di un ciclo parallelo lo costruiscono insieme ognuno vede un albero completo (al piu' viene costruito due volte);
+     * un dizionario denso condiviso resta denso, l'albero serve solo per gli aggiornamenti funzionali
+     */
+    private IntMap tree(){
+        var tree = dict;
+        if (tree == null)
+            dict = tree = dense != null ? denseTree() : OffHeapMap.range(low, high - low + 1, fill);
+        return tree;
+    }
+
+    private IntMap denseTree(){
+        var values = dense;
+        var sortedKeys = new int[count];
+        var sortedValues = new Value[count];
+        var n = 0;
+        for (var i = 0; i < values.length; i++)
+            if (values[i] != null) {
+                sortedKeys[n] = base + i;
+                sortedValues[n++] = values[i];
+            }
+        return OffHeapMap.sorted(sortedKeys, sortedValues, n);
+    }
+
+    private boolean isVirtual(){ // intervallo non ancora materializzato
+        return dense == null && dict == null;
+    }
+
+    // le operazioni seguenti sull'array denso hanno come pre-condizione che l'array appartenga solo a questo dizionario
+
+    // l'intervallo virtuale diventa un array denso con una posizione per chiave
+    private void toDense(){
+        dense = new Value[high - low + 1];
+        Arrays.fill(dense, fill);
+        base = low;
+        count = dense.length;
+    }
+
+    // passaggio definitivo alla forma sparsa
+    private void toSparse(){
+        dict = denseTree();
+        dense = null;
+    }
+
+    // associa 'value' a 'key' nell'array denso; false, senza modificare il dizionario, se l'array diventerebbe troppo sparso
+    private boolean putDense(int key, Value value){
+        var i = (long) key - base;
+        if (i < 0 || i >= dense.length) {
+            if (!grow(key))
+                return false;
+            i = (long) key - base;
+        }
+        if (dense[(int) i] == null)
+            count++;
+        dense[(int) i] = value;
+        return true;
+    }
+
+    // allarga l'array denso fino a 'key', almeno raddoppiandone la capacita' dal lato di 'key'
+    private boolean grow(int key){
+        if (count == 0) { // le posizioni sono tutte libere, l'array viene solo spostato
+            if (dense.length == 0)
+                dense = new Value[1];
+            base = key;
+            return true;
+        }
+        long length = dense.length;
+        long newBase = base;
+        long newLength;
+        if (key >= base + length)
+            newLength = Math.max(2 * length, key - newBase + 1);
+        else {
+            newLength = Math.max(2 * length, base + length - key);
+            newBase = Math.max(Integer.MIN_VALUE, base + length - newLength);
+        }
+        if ((count + 1L) * DENSITY < newLength || newLength > Integer.MAX_VALUE - 8)
+            return false;
+        if (count >= OffHeapMap.threshold() && OffHeapMap.fits(dense, dense.length))
+            return false; // abbastanza grande per la forma fuori dallo heap, che toSparse() sceglie
+        var values = new Value[(int) newLength];
+        System.arraycopy(dense, 0, values, (int) (base - newBase), dense.length);
+        dense = values;
+        base = (int) newBase;
+        return true;
     }
 
-    public DictValue(TreeMap<Integer, Value> dict){ // Creazione di una copia
-        this. dict = new TreeMap<>(dict);
+    private void removeDense(int key){
+        var i = (long) key - base;
+        if (i >= 0 && i < dense.length && dense[(int) i] != null) {
+            dense[(int) i] = null;
+            count--;
+        }
+    }
+
+    public DictValue update(int key, Value value){ // Metodo put funzionale, O(log n): il dizionario corrente non viene modificato
+        edit = null; // i nodi marcati saranno condivisi con la nuova versione, non possono piu' essere modificati
+        var newHash = hashAfter(key, get(key), value);
+        var values = dense;
+        if (values != null && values.length <= SMALL) { // dizionario denso piccolo, l'array viene copiato
+            var copy = new DictValue(values.clone(), base, count, newHash);
+            if (!copy.putDense(key, value)) {
+                copy.toSparse();
+                copy.dict = copy.dict.put(key, value);
+            }
+            return copy;
+        }
+        return new DictValue(tree().put(key, value), newHash);
+    }
+
+    // come update, ma se il dizionario e' di proprieta' esclusiva viene modificato sul posto e restituito
+    public DictValue updateInPlace(int key, Value value){
+        if (!owned)
+            return update(key, value);
+        hash = hashAfter(key, get(key), value);
+        if (isVirtual())
+            toDense();
+        if (dense != null) {
+            dict = null; // l'eventuale albero costruito da tree() non corrisponde piu' all'array
+            if (putDense(key, value))
+                return this;
+            toSparse();
+        }
+        if (edit == null)
+            edit = new Object();
+        dict = tree().put(key, value, edit);
+        return this;
+    }
+
+    public Value get(int key){ // Metodo get, null se la chiave non esiste
+        var values = dense;
+        if (values != null) { // O(1)
+            var i = (long) key - base;
+            return i >= 0 && i < values.length ? values[(int) i] : null;
+        }
+        if (dict != null)
+            return dict.get(key);
+        return low <= key && key <= high ? fill : null;
+    }
+
+    public DictValue delete(int key){ // Metodo remove funzionale, O(log n): il dizionario corrente non viene modificato
+        edit = null;
+        var newHash = hashAfter(key, get(key), null);
+        var values = dense;
+        if (values != null && values.length <= SMALL) {
+            var copy = new DictValue(values.clone(), base, count, newHash);
+            copy.removeDense(key);
+            return copy;
+        }
+        return new DictValue(tree().remove(key), newHash);
+    }
+
+    // come delete, ma se il dizionario e' di proprieta' esclusiva viene modificato sul posto e restituito
+    public DictValue deleteInPlace(int key){
+        if (!owned)
+            return delete(key);
+        hash = hashAfter(key, get(key), null);
+        if (isVirtual())
+            toDense();
+        if (dense != null) {
+            dict = null;
+            removeDense(key);
+            if (dense.length > SMALL && count * DENSITY < dense.length)
+                toSparse();
+            return this;
+        }
+        if (edit == null)
+            edit = new Object();
+        dict = tree().remove(key, edit);
+        return this;
+    }
+
+    // il dizionario, appena creato, e' stato assegnato a una variabile che ne e' l'unico riferimento
+    public void own(){
+        owned = true;
+    }
+
+    // il dizionario e' stato letto e puo' avere altri riferimenti: non sara' piu' modificato sul posto
+    public void share(){
+        if (owned)
+            owned = false;
     }
 
-    public TreeMap<Integer, Value> getMap(){ // Getter dell'Albero
-        return dict;
+    public boolean containsKey(int key){ // metodo per verificare se una chiave esiste
+        if (dense == null && dict != null)
+            return dict.containsKey(key);
+        return get(key) != null;
     }
 
-    public void update(Integer key, Value value){ // Metodo put
-        dict.put(key, value);
+    public int size(){ // O(1), la dimensione e' memorizzata nei nodi dell'albero
+        if (dense != null)
+            return count;
+        return dict != null ? dict.size() : high - low + 1;
     }
 
-    public Value get(Integer key){ // Metodo get
-        return dict.get(key);
+    public DictCursor cursor(){ // Cursore per visitare le associazioni in ordine crescente delle chiavi
+        return cursor(0);
     }
 
-    public void delete(Integer key){ // Metodo remove
-        dict.remove(key);
+    public DictCursor cursor(int from){ // Cursore che parte dall'associazione di indice 'from', O(log n)
+        var values = dense;
+        if (values != null)
+            return new DenseCursor(values, base, count, from);
+        return dict != null ? dict.cursor(from) : new RangeCursor(from);
     }
 
-    public boolean containsKey(Integer key){ // metodo per verificare se una chiave esiste
-        return dict.containsKey(key);
+    // cursore su un array denso, salta le posizioni libere
+    private static final class DenseCursor implements DictCursor {
+        private final Value[] values;
+        private final int base;
+        private int i = -1;
+
+        DenseCursor(Value[] values, int base, int count, int from){
+            this.values = values;
+            this.base = base;
+            if (count == values.length) // nessuna posizione libera
+                i = Math.min(from, values.length) - 1;
+            else
+                for (var n = 0; n < from && next(); n++)
+                    ;
+        }
+
+        @Override
+        public boolean next(){
+            while (++i < values.length)
+                if (values[i] != null)
+                    return true;
+            i = values.length;
+            return false;
+        }
+
+        @Override
+        public int key(){
+            checkCurrent();
+            return base + i;
+        }
+
+        @Override
+        public Value value(){
+            checkCurrent();
+            return values[i];
+        }
+
+        private void checkCurrent(){
+            if (i < 0 || i >= values.length)
+                throw new NoSuchElementException();
+        }
     }
 
-    public DictValue copy(){ // metodo per copiare un dizionario, necessario affinche' si rispetti il comportamento funzionale
-        DictValue newDict = new DictValue();
-        newDict.dict.putAll(this.dict); // copio il dizionario con il metodo predefinito putAll di TreeMap
-        return newDict;
+    // cursore su un intervallo virtuale, le associazioni vengono calcolate senza allocare memoria
+    private final class RangeCursor implements DictCursor {
+        private long key; // long per non andare in overflow dopo high = Integer.MAX_VALUE
+
+        RangeCursor(int from){
+            key = (long) low + from - 1;
+        }
+
+        @Override
+        public boolean next(){
+            return key <= high && ++key <= high;
+        }
+
+        @Override
+        public int key(){
+            checkCurrent();
+            return (int) key;
+        }
+
+        @Override
+        public Value value(){
+            checkCurrent();
+            return fill;
+        }
+
+        private void checkCurrent(){
+            if (key < low || key > high)
+                throw new NoSuchElementException();
+        }
     }
 
     @Override // Ridefinisco i metodi Equals e HashCode
@@ -46,27 +408,37 @@ public class DictValue implements Value {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         DictValue other = (DictValue) obj;
-        return Objects.equals(this.dict, other.dict);
+        if (hash != other.hash || size() != other.size()) return false; // O(1), i dizionari diversi sono scartati qui
+        if (isVirtual() && other.isVirtual()) return low == other.low && high == other.high && fill.equals(other.fill);
+        if (dense == null && other.dense == null && dict == other.dict && dict != null) return true;
+        if (dense == null && other.dense == null && dict instanceof PersistentBTree tree
+                && other.dict instanceof PersistentBTree otherTree) // salta i sottoalberi condivisi
+            return tree.sameEntries(otherTree);
+        var it = cursor();
+        var otherIt = other.cursor();
+        while (it.next() && otherIt.next()) { // le chiavi sono ordinate, quindi basta un confronto in parallelo
+            if (it.key() != otherIt.key() || !it.value().equals(otherIt.value())) return false;
+        }
+        return true;
     }
 
 
     @Override
-    public int hashCode() {
-        return dict.hashCode();
+    public int hashCode() { // stessa definizione di Map.hashCode, mantenuto da UPDATE e DELETE
+        return hash;
     }
 
     @Override
     public String toString(){ // toString con formattazione richiesta da file di test
-        // return dict.toString();
         StringBuilder str = new StringBuilder();
         str.append("[");
         boolean first = true;
-        for (Map.Entry<Integer, Value> entry : dict.entrySet()) {
+        for (var it = cursor(); it.next(); ) {
             if (!first) {
                 str.append(",");
             }
             first = false;
-            str.append(entry.getKey()).append(":").append(entry.getValue());
+            str.append(it.key()).append(":").append(it.value());
         }
         str.append("]");
         return str.toString();
@@ -1,6 +1,14 @@
 package projectLabo.visitors.execution;
 
-import projectLabo.environments.Environment;
+import projectLabo.environments.FrameEnvironment;
 
-public class DynamicEnv extends Environment<Value> {
+public class DynamicEnv extends FrameEnvironment<Value> {
+
+	public DynamicEnv() {
+	}
+
+	// ambiente di un worker di un ciclo parallelo, condivide (in sola lettura) i livelli correnti di 'env'
+	public DynamicEnv(DynamicEnv env) {
+		super(env);
+	}
 }
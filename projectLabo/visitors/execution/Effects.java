@@ -0,0 +1,155 @@
+package projectLabo.visitors.execution;
+
+import java.util.List;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+
+/*
+ * analisi degli effetti del corpo di un ciclo 'for': il visitor restituisce true se il corpo
+ * assegna una variabile dichiarata fuori dal ciclo; le espressioni non hanno effetti e l'unico
+ * altro effetto di un'istruzione e' la stampa
+ *
+ * un corpo senza tali assegnamenti non dipende dalle iterazioni precedenti, quindi le iterazioni
+ * possono essere eseguite in qualsiasi ordine, purche' le stampe vengano riordinate
+ *
+ * l'analisi usa le coordinate statiche assegnate dal resolver: una variabile e' interna al ciclo
+ * se la sua profondita' e' minore del numero di livelli aperti a partire da quello della variabile
+ * del ciclo; una variabile non dichiarata (profondita' -1) e' considerata esterna
+ */
+final class Effects implements Visitor<Boolean> {
+
+	private int inside = 1; // livelli aperti dal ciclo analizzato, compreso quello della sua variabile
+
+	private Effects() {
+	}
+
+	// true se il corpo 'forBlock' assegna variabili dichiarate fuori dal ciclo
+	static boolean writesOuter(Block forBlock) {
+		return forBlock.accept(new Effects());
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Boolean visitLangProg(StmtSeq stmtSeq) {
+		return stmtSeq.accept(this);
+	}
+
+	@Override
+	public Boolean visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			if (stmt.accept(this))
+				return true;
+		return false;
+	}
+
+	// statements
+
+	@Override
+	public Boolean visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		return thenBlock.accept(this) || elseBlock != null && elseBlock.accept(this);
+	}
+
+	@Override
+	public Boolean visitPrintStmt(Exp exp) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitVarStmt(Variable var, Exp exp) {
+		return false; // dichiarazione nel livello corrente, interno al ciclo
+	}
+
+	@Override
+	public Boolean visitBlock(StmtSeq stmtSeq) {
+		inside++;
+		var writes = stmtSeq.accept(this);
+		inside--;
+		return writes;
+	}
+
+	@Override
+	public Boolean visitAssignStmt(Variable var, Exp exp) {
+		return var.depth() < 0 || var.depth() >= inside;
+	}
+
+	@Override
+	public Boolean visitForStmt(Variable var, Exp exp, Block forBlock) {
+		inside++; // livello della variabile del ciclo annidato
+		var writes = forBlock.accept(this);
+		inside--;
+		return writes;
+	}
+
+	// expressions have no side effects
+
+	@Override
+	public Boolean visitAdd(Exp left, Exp right) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitBoolLiteral(boolean value) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitEq(Exp left, Exp right) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitFst(Exp exp) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitIntLiteral(int value) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitMinus(Exp exp) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitMul(Exp left, Exp right) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitPairLit(Exp left, Exp right) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitSnd(Exp exp) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitVariable(Variable var) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitNot(Exp exp) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitAnd(Exp left, Exp right) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		return false;
+	}
+}
@@ -1,7 +1,13 @@
 package projectLabo.visitors.execution;
 
 import java.io.PrintWriter;
-import java.util.Map;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import static java.util.Objects.requireNonNull;
 import projectLabo.environments.EnvironmentException;
 import projectLabo.parser.ast.Block;
@@ -14,15 +20,64 @@ import projectLabo.visitors.Visitor;
 
 public class Execute implements Visitor<Value> {
 
-	private final DynamicEnv env = new DynamicEnv();
+	private final DynamicEnv env;
 	private final PrintWriter printWriter; // output stream used to print values
 
+	// valori delle espressioni invarianti (InvariantExp), validi finche' il loro ciclo non viene rieseguito
+	private long[] loopEpochs = new long[8]; // epoca dell'esecuzione corrente del ciclo a ogni profondita'
+	private int loopDepth; // numero di cicli in esecuzione
+	private long epochs; // epoche assegnate finora
+	private Value[] invariantValues = new Value[16];
+	private long[] invariantEpochs = new long[16];
+
+	// per ogni ciclo (identificato dalla sua variabile) se il corpo usa la variabile solo con fst e snd
+	private final IdentityHashMap<Variable, Boolean> projectedLoops = new IdentityHashMap<>();
+
+	// cicli paralleli: per ogni ciclo se il corpo non assegna variabili esterne (vedi Effects)
+	private static final int PARALLEL_THRESHOLD = 1 << 12; // associazioni minime per eseguire un ciclo in parallelo
+	private final IdentityHashMap<Variable, Boolean> parallelLoops = new IdentityHashMap<>();
+	private boolean parallel; // false di default e sempre per i worker, i cicli annidati sono sequenziali
+
+	private Interner interner; // tabella di hash-consing di coppie e dizionari, null se disabilitata
+
 	public Execute() {
+		env = new DynamicEnv();
 		printWriter = new PrintWriter(System.out, true);
 	}
 
 	public Execute(PrintWriter printWriter) {
+		env = new DynamicEnv();
+		this.printWriter = requireNonNull(printWriter);
+	}
+
+	// worker di un ciclo parallelo: legge i livelli correnti di 'parent' e stampa su 'printWriter'
+	protected Execute(PrintWriter printWriter, Execute parent) {
+		env = new DynamicEnv(parent.env);
 		this.printWriter = requireNonNull(printWriter);
+		loopEpochs = parent.loopEpochs.clone();
+		loopDepth = parent.loopDepth;
+		epochs = parent.epochs;
+		interner = parent.interner;
+	}
+
+	// abilita l'esecuzione parallela dei cicli 'for' sui dizionari grandi il cui corpo non assegna variabili esterne
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	// con una tabella di hash-consing le coppie e i dizionari creati vengono sostituiti dai loro rappresentanti
+	public void setInterner(Interner interner) {
+		this.interner = interner;
+	}
+
+	// il rappresentante di una coppia o di un dizionario appena creato, il valore stesso senza hash-consing
+	protected <V extends Value> V intern(V value) {
+		return interner == null ? value : interner.intern(value);
+	}
+
+	// nuovo worker per un ciclo parallelo, le sottoclassi lo ridefiniscono per restituire un worker dello stesso tipo
+	protected Execute worker(PrintWriter printWriter) {
+		return new Execute(printWriter, this);
 	}
 
 	// dynamic semantics for programs; no value returned by the visitor
@@ -43,14 +98,9 @@ public class Execute implements Visitor<Value> {
 	// no value returned by the visitor
 
 	@Override
-	public Value visitEmptyStmtSeq() {
-		return null;
-	}
-
-	@Override
-	public Value visitNonEmptyStmtSeq(Stmt first, StmtSeq rest) {
-		first.accept(this);
-		rest.accept(this);
+	public Value visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			stmt.accept(this);
 		return null;
 	}
 
@@ -73,7 +123,7 @@ public class Execute implements Visitor<Value> {
 
 	@Override
 	public Value visitVarStmt(Variable var, Exp exp) {
-		env.dec(var, exp.accept(this));
+		env.dec(var, owned(exp, exp.accept(this)));
 		return null;
 	}
 
@@ -89,70 +139,115 @@ public class Execute implements Visitor<Value> {
 
 	@Override
 	public IntValue visitAdd(Exp left, Exp right) {
-		return new IntValue(left.accept(this).toInt() + right.accept(this).toInt());
+		return IntValue.of(left.accept(this).toInt() + right.accept(this).toInt());
 	}
 
 	@Override
 	public BoolValue visitBoolLiteral(boolean value) {
-		return new BoolValue(value);
+		return BoolValue.of(value);
 	}
 
 	@Override
 	public BoolValue visitEq(Exp left, Exp right) {
-		return new BoolValue(left.accept(this).equals(right.accept(this)));
+		return BoolValue.of(left.accept(this).equals(right.accept(this)));
 	}
 
 	@Override
 	public Value visitFst(Exp exp) {
-		return exp.accept(this).toPair().fstVal();
+		return LoopEntry.fst(exp.accept(this));
 	}
 
 	@Override
 	public IntValue visitIntLiteral(int value) {
-		return new IntValue(value);
+		return IntValue.of(value);
 	}
 
 	@Override
 	public IntValue visitMinus(Exp exp) {
-		return new IntValue(-exp.accept(this).toInt());
+		return IntValue.of(-exp.accept(this).toInt());
 	}
 
 	@Override
 	public IntValue visitMul(Exp left, Exp right) {
-		return new IntValue(left.accept(this).toInt() * right.accept(this).toInt());
+		return IntValue.of(left.accept(this).toInt() * right.accept(this).toInt());
 	}
 
 	@Override
 	public PairValue visitPairLit(Exp left, Exp right) {
-		return new PairValue(left.accept(this), right.accept(this));
+		return intern(new PairValue(left.accept(this), right.accept(this)));
 	}
 
 	@Override
 	public Value visitSnd(Exp exp) {
-		return exp.accept(this).toPair().sndVal();
+		return LoopEntry.snd(exp.accept(this));
 	}
 
 	@Override
 	public Value visitVariable(Variable var) {
-		return env.lookup(var);
+		var value = env.lookup(var);
+		if (value instanceof DictValue dict) // il dizionario puo' essere copiato altrove, non va piu' modificato sul posto
+			dict.share();
+		return value;
 	}
 
 	@Override
 	public BoolValue visitNot(Exp exp){
-		return new BoolValue(!exp.accept(this).toBool()); // Ritorniamo un oggetto di tipo Booleano ! con il check toBool
+		return BoolValue.of(!exp.accept(this).toBool()); // Ritorniamo un oggetto di tipo Booleano ! con il check toBool
 	}
 
 	@Override
 	public BoolValue visitAnd(Exp left, Exp right){
-		return new BoolValue(left.accept(this).toBool() && right.accept(this).toBool()); // Ritorniamo un oggetto di tipo Booleano controllato con && e il check toBool
+		return BoolValue.of(left.accept(this).toBool() && right.accept(this).toBool()); // Ritorniamo un oggetto di tipo Booleano controllato con && e il check toBool
 	}
 
 	@Override
 	public Value visitAssignStmt(Variable var, Exp exp) { // Simile a visitVarStmt ma piuttosto che dichiararla la aggiorniamo
-		env.update(var, exp.accept(this)); // Update gestisce autonomamente il caso in cui var non sia stata dichiarata in precedenza
+		var value = exp instanceof Dict dict && isSelfUpdate(var, dict) ? intern(selfUpdate(var, dict)) : exp.accept(this);
+		env.update(var, owned(exp, value)); // Update gestisce autonomamente il caso in cui var non sia stata dichiarata in precedenza
 		return null;
 	}
 
+	/*
+	 * gestione dei dizionari di proprieta' esclusiva (vedi DictValue): un dizionario appena creato da
+	 * CREATE, UPDATE o DELETE e assegnato a una variabile e' raggiungibile solo da quella variabile,
+	 * finche' la variabile non viene letta; in 'd = d[k:v]' e 'd = d[k:]' la versione precedente di d
+	 * non puo' piu' essere osservata, quindi il dizionario viene modificato sul posto
+	 */
+
+	// marca come di proprieta' della variabile il valore di 'exp', se e' un dizionario appena creato
+	// (mai con l'hash-consing, il dizionario puo' essere il rappresentante condiviso di altri dizionari)
+	private Value owned(Exp exp, Value value) {
+		if (interner == null && exp instanceof Dict dict && dict.getOp() != Dict.DictOp.GET && value instanceof DictValue dictVal)
+			dictVal.own();
+		return value;
+	}
+
+	// 'var = var[k:v]' oppure 'var = var[k:]'
+	private static boolean isSelfUpdate(Variable var, Dict dict) {
+		return (dict.getOp() == Dict.DictOp.UPDATE || dict.getOp() == Dict.DictOp.DELETE) && var.equals(dict.getDict());
+	}
+
+	// stessi controlli e stesso ordine di valutazione di visitDict, ma senza copiare il dizionario se e' di proprieta'
+	private Value selfUpdate(Variable var, Dict dict) {
+		if (!(env.lookup(var) instanceof DictValue dictVal))
+			throw new InterpreterException("Expected a dictionary in dict operation.");
+		Value keyVal = dict.getKey().accept(this);
+		if (!(keyVal instanceof IntValue))
+			throw new InterpreterException("dict keys must be integers");
+		int key = keyVal.toInt();
+		if (dict.getOp() == Dict.DictOp.UPDATE)
+			return dictVal.updateInPlace(key, dict.getValue().accept(this)); // letture di var nel valore annullano la proprieta'
+		if (!dictVal.containsKey(key))
+			throw new InterpreterException("Missing key " + key);
+		return dictVal.deleteInPlace(key);
+	}
+
+	// dizionario su cui opera GET, UPDATE o DELETE: una variabile viene letta senza annullarne la proprieta',
+	// perche' il dizionario non viene copiato altrove (UPDATE e DELETE creano una nuova versione)
+	protected Value dictOperand(Exp dictExp) {
+		return dictExp instanceof Variable var ? env.lookup(var) : dictExp.accept(this);
+	}
+
 	//********************************/NUOVI METODI IMPLEMENTATI/*******************************************//
 
 	@Override
@@ -163,23 +258,96 @@ public class Execute implements Visitor<Value> {
 			throw new InterpreterException("expected a dictionary in 'for' loop.");
 		}
 
-		env.enterLevel(); // Entra in nuovo scope (lo scope del ciclo)
+		if (++loopDepth == loopEpochs.length)
+			loopEpochs = Arrays.copyOf(loopEpochs, 2 * loopDepth);
+		loopEpochs[loopDepth] = ++epochs; // nuova esecuzione del ciclo, le sue espressioni invarianti vanno ricalcolate
+
+		if (parallel && dictVal.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1
+				&& parallelLoops.computeIfAbsent(var, v -> !Effects.writesOuter(forBlock)))
+			iterateParallel(var, dictVal, forBlock);
+		else
+			iterate(var, dictVal.cursor(), dictVal.size(), forBlock);
+		loopDepth--;
+
+		return null;
+	}
 
-		for(Map.Entry<Integer, Value> i : dictVal.getMap().entrySet()){ // Gestito in questo modo poiche' le chiavi non sono in ordine contiguo (crescente ma non contiguo)
-			Value pair = new PairValue(new IntValue(i.getKey()), i.getValue()); // Crea coppia chiave-valore
+	// esegue il corpo del ciclo per le prossime 'count' associazioni di 'cursor'
+	private void iterate(Variable var, DictCursor cursor, int count, Block forBlock) {
+		env.enterLevel(); // Entra in nuovo scope (lo scope del ciclo)
 
-			try{
-            	env.dec(var, pair); 	// Dichiarazione iniziale
-        	} catch (EnvironmentException e) {
-            	env.update(var, pair); // Se già dichiarata, aggiorna
-        	}
+		// se il corpo usa la variabile solo con fst e snd basta una vista sull'associazione corrente, riusata a ogni iterazione
+		var entry = projectedLoops.computeIfAbsent(var, v -> Projections.onlyProjected(v, forBlock)) ? new LoopEntry() : null;
+		for(var n = 0; n < count && cursor.next(); n++){ // Gestito in questo modo poiche' le chiavi non sono in ordine contiguo (crescente ma non contiguo)
+			if (entry != null) {
+				entry.set(cursor.key(), cursor.value());
+				env.bind(var, entry); // la variabile viene (ri)legata direttamente, senza eccezioni
+			} else
+				env.bind(var, new PairValue(IntValue.of(cursor.key()), cursor.value())); // Crea coppia chiave-valore
 
 			forBlock.accept(this); // Esegui il blocco del ciclo con questa associazione
 		}
 
 		env.exitLevel(); // Esci dallo scope del ciclo
+	}
 
-		return null;
+	/*
+	 * le associazioni vengono divise in intervalli contigui di chiavi, eseguiti da worker sul pool
+	 * fork/join comune; ogni worker ha il proprio ambiente, che condivide in sola lettura i livelli
+	 * esterni al ciclo, e stampa in un buffer
+	 *
+	 * i buffer vengono scritti nell'ordine delle chiavi, quindi l'output e' identico a quello
+	 * sequenziale; se un intervallo fallisce, il suo output parziale viene scritto e l'errore
+	 * viene sollevato, mentre l'output degli intervalli successivi viene scartato
+	 */
+	private void iterateParallel(Variable var, DictValue dictVal, Block forBlock) {
+		var size = dictVal.size();
+		var chunks = Math.min(size, 4 * ForkJoinPool.getCommonPoolParallelism());
+		var buffers = new ArrayList<StringWriter>(chunks);
+		var tasks = new ArrayList<ForkJoinTask<Throwable>>(chunks);
+		for (var c = 0; c < chunks; c++) {
+			var from = (int) ((long) size * c / chunks);
+			var count = (int) ((long) size * (c + 1) / chunks) - from;
+			var buffer = new StringWriter();
+			var worker = worker(new PrintWriter(buffer));
+			buffers.add(buffer);
+			tasks.add(ForkJoinPool.commonPool().submit(() -> {
+				try {
+					worker.iterate(var, dictVal.cursor(from), count, forBlock);
+					return null;
+				} catch (RuntimeException | Error e) { // restituito e non sollevato, join lo incapsulerebbe
+					return e;
+				} finally {
+					worker.printWriter.flush();
+				}
+			}));
+		}
+		for (var c = 0; c < chunks; c++) {
+			var error = tasks.get(c).join();
+			printWriter.write(buffers.get(c).toString());
+			if (error != null) {
+				for (var task : tasks)
+					task.cancel(false);
+				if (error instanceof RuntimeException e)
+					throw e;
+				throw (Error) error;
+			}
+		}
+	}
+
+	@Override
+	public Value visitInvariant(Exp exp, int id, int loopDepth) {
+		if (id >= invariantValues.length) {
+			invariantValues = Arrays.copyOf(invariantValues, 2 * id + 1);
+			invariantEpochs = Arrays.copyOf(invariantEpochs, 2 * id + 1);
+		}
+		var epoch = loopEpochs[loopDepth];
+		if (invariantEpochs[id] == epoch) // gia' valutata durante questa esecuzione del ciclo
+			return invariantValues[id];
+		var value = exp.accept(this); // prima valutazione, eventuali errori sono sollevati qui
+		invariantValues[id] = value;
+		invariantEpochs[id] = epoch;
+		return value;
 	}
 
 
@@ -192,9 +360,16 @@ public class Execute implements Visitor<Value> {
 				if (!(keyVal instanceof IntValue)) {
 					throw new InterpreterException("dict keys must be integers");
 				}
-				DictValue dict = new DictValue(); // Creo il nuovo dizionario
-				dict.update(keyVal.toInt(), valueVal);
-				return dict; // ritorno il nuovo dizionario
+				return intern(new DictValue().update(keyVal.toInt(), valueVal)); // Creo e ritorno il nuovo dizionario
+			}
+			case RANGE -> { // [low..high : value], dizionario virtuale: le associazioni non vengono create
+				Value lowVal = dictExp.accept(this);
+				Value highVal = keyExp.accept(this);
+				Value valueVal = valueExp.accept(this);
+				if (!(lowVal instanceof IntValue) || !(highVal instanceof IntValue)) {
+					throw new InterpreterException("dict keys must be integers");
+				}
+				return intern(DictValue.range(lowVal.toInt(), highVal.toInt(), valueVal));
 			}
 			default -> {
 				if(dictExp == null){ // se non si tratta di ua create e dict e' null
@@ -202,7 +377,7 @@ public class Execute implements Visitor<Value> {
 				}
 
 				// System.out.println("dictExp class: " + (dictExp == null ? "null" : dictExp.getClass().getSimpleName()));
-				Value dictVal = dictExp.accept(this);
+				Value dictVal = dictOperand(dictExp);
 				if (dictVal == null) {
 					throw new InterpreterException("dictVal is null in visitDict");
 				}
@@ -231,9 +406,7 @@ public class Execute implements Visitor<Value> {
 							throw new InterpreterException("Missing key " + key);
 						}
 						
-						DictValue newDict = dict.copy();  
-						newDict.delete(key);              // modifica la copia
-						return newDict;                   // ritorna la copia
+						return intern(dict.delete(key));  // nuova versione, condivide la struttura con dict
 					}
 
 					case UPDATE -> {
@@ -242,9 +415,7 @@ public class Execute implements Visitor<Value> {
 						}
 						Value value = valueExp.accept(this);
 
-						DictValue newDict = dict.copy();  
-						newDict.update(key, value);       // modifica la copia
-						return newDict;                   // ritorna la copia
+						return intern(dict.update(key, value)); // nuova versione, condivide la struttura con dict
 					}
 
 					default -> throw new InterpreterException("Unsupported operation on dict");
@@ -0,0 +1,33 @@
+package projectLabo.visitors.execution;
+
+/*
+ * mappa ordinata da chiavi intere a valori, forma sparsa di DictValue: put e remove non modificano
+ * la mappa corrente ma restituiscono una nuova versione, che puo' essere di un'altra implementazione;
+ * le versioni con 'edit' modificano sul posto solo le parti che appartengono al token (vedi PersistentBTree)
+ *
+ * le implementazioni sono PersistentBTree, sullo heap, e OffHeapMap, fuori dallo heap
+ */
+interface IntMap {
+
+	int size();
+
+	// restituisce il valore associato a 'key', null se la chiave non e' presente
+	Value get(int key);
+
+	boolean containsKey(int key);
+
+	// nuova versione della mappa dove 'key' e' associata a 'value'
+	IntMap put(int key, Value value);
+
+	// nuova versione della mappa senza 'key'; se la chiave non e' presente restituisce la mappa stessa
+	IntMap remove(int key);
+
+	IntMap put(int key, Value value, Object edit);
+
+	IntMap remove(int key, Object edit);
+
+	DictCursor cursor();
+
+	// cursore posizionato prima dell'associazione di indice 'from'
+	DictCursor cursor(int from);
+}
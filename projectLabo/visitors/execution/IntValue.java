@@ -1,9 +1,24 @@
 package projectLabo.visitors.execution;
 
-public class IntValue extends AtomicValue<Integer> {
+public class IntValue extends AtomicValue {
 
-	public IntValue(Integer value) {
-		super(value);
+	// istanze condivise per gli interi piccoli, i piu' frequenti nei cicli e nelle chiavi dei dizionari
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final IntValue[] cache = new IntValue[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (var i = 0; i < cache.length; i++)
+			cache[i] = new IntValue(i + CACHE_LOW);
+	}
+
+	private final int value;
+
+	private IntValue(int value) {
+		this.value = value;
+	}
+
+	public static IntValue of(int value) {
+		return value >= CACHE_LOW && value <= CACHE_HIGH ? cache[value - CACHE_LOW] : new IntValue(value);
 	}
 
 	@Override
@@ -11,4 +26,14 @@ public class IntValue extends AtomicValue<Integer> {
 		return value;
 	}
 
-}
\ No newline at end of file
+	@Override
+	protected int primitiveValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(value);
+	}
+
+}
@@ -0,0 +1,67 @@
+package projectLabo.visitors.execution;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/*
+ * tabella di hash-consing per coppie e dizionari: intern restituisce l'unico rappresentante
+ * (canonico) dei valori uguali a quello ricevuto, quindi i valori uguali creati piu' volte
+ * vengono condivisi e il confronto tra rappresentanti si riduce al confronto dei riferimenti
+ *
+ * la tabella tiene i rappresentanti con riferimenti deboli: un valore non piu' raggiungibile dal
+ * programma viene eliminato dal garbage collector anche se e' nella tabella
+ *
+ * vengono rappresentati solo i valori piccoli (vedi MAX_WEIGHT), per cui calcolare hashCode ed
+ * equals costa poco; i dizionari rappresentati sono condivisi, quindi non devono mai essere
+ * modificati sul posto (Execute non li rende di proprieta' esclusiva quando la tabella e' attiva)
+ *
+ * la tabella e' condivisa dai worker dei cicli paralleli, quindi i metodi sono sincronizzati
+ */
+public class Interner {
+
+	private static final int MAX_WEIGHT = 256; // numero massimo di valori atomici e associazioni di un valore rappresentato
+
+	private final WeakHashMap<Value, WeakReference<Value>> table = new WeakHashMap<>();
+	private long lookups; // valori ricevuti da intern
+	private long hits; // valori gia' presenti nella tabella
+
+	// il rappresentante di 'value', che diventa esso stesso il rappresentante se non ce ne sono altri
+	@SuppressWarnings("unchecked")
+	public synchronized <V extends Value> V intern(V value) {
+		if (weight(value, MAX_WEIGHT) < 0)
+			return value;
+		lookups++;
+		var ref = table.get(value);
+		var canonical = ref == null ? null : ref.get();
+		if (canonical != null) {
+			hits++;
+			return (V) canonical; // valori uguali hanno la stessa classe
+		}
+		table.put(value, new WeakReference<>(value));
+		return value;
+	}
+
+	// 'budget' meno il peso di 'value', negativo se il peso supera 'budget'
+	private static int weight(Value value, int budget) {
+		if (value instanceof AtomicValue)
+			return budget - 1;
+		if (value instanceof PairValue pair) {
+			budget = weight(pair.fstVal(), budget - 1);
+			return budget < 0 ? budget : weight(pair.sndVal(), budget);
+		}
+		if (value instanceof DictValue dict && dict.size() <= budget) {
+			budget -= dict.size();
+			for (var i = dict.cursor(); budget >= 0 && i.next();)
+				budget = weight(i.value(), budget);
+			return budget;
+		}
+		return -1;
+	}
+
+	// statistiche di utilizzo della tabella
+	public synchronized String report() {
+		var rate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+		return String.format("Hash-consing: %d values interned, %d hits (%.1f%%), %d canonical values live", lookups,
+				hits, rate, table.size());
+	}
+}
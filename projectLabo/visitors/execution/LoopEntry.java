@@ -0,0 +1,45 @@
+package projectLabo.visitors.execution;
+
+/*
+ * vista pigra sull'associazione corrente di un ciclo 'for', usata al posto di una PairValue
+ * quando il corpo del ciclo usa la variabile solo come argomento di fst e snd (vedi 'Projections'):
+ * la stessa istanza viene riusata a ogni iterazione, la chiave viene convertita in IntValue
+ * solo se richiesta e la coppia viene materializzata solo da toPair
+ */
+public final class LoopEntry implements Value {
+	private int key;
+	private Value value;
+
+	public void set(int key, Value value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	Value fst() {
+		return IntValue.of(key);
+	}
+
+	Value snd() {
+		return value;
+	}
+
+	@Override
+	public PairValue toPair() {
+		return new PairValue(IntValue.of(key), value);
+	}
+
+	@Override
+	public String toString() {
+		return toPair().toString();
+	}
+
+	// fst e snd di un valore che puo' essere una vista su un'associazione
+
+	public static Value fst(Value value) {
+		return value instanceof LoopEntry entry ? entry.fst() : value.toPair().fstVal();
+	}
+
+	public static Value snd(Value value) {
+		return value instanceof LoopEntry entry ? entry.snd() : value.toPair().sndVal();
+	}
+}
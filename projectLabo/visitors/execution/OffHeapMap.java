@@ -0,0 +1,387 @@
+package projectLabo.visitors.execution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.NoSuchElementException;
+
+/*
+ * forma sparsa fuori dallo heap per i dizionari grandi con solo valori interi o solo valori booleani
+ * (per esempio [INT:INT] e [INT:BOOL]): chiavi e valori sono int in buffer diretti, memoria che il
+ * garbage collector non visita e non copia, quindi anche milioni di associazioni non allungano le pause;
+ * se le chiavi sono contigue (come negli intervalli) viene memorizzata solo la prima
+ *
+ * i buffer non vengono mai modificati e sono condivisi da tutte le versioni della mappa: gli aggiornamenti
+ * finiscono in un albero persistente sullo heap ('delta'), che per le chiavi rimosse contiene il marcatore
+ * DELETED; quando il delta supera 1/DELTA delle associazioni dei buffer le due parti vengono fuse in nuovi
+ * buffer, con un costo O(n) ammortizzato sugli aggiornamenti
+ *
+ * la memoria di un buffer diretto viene liberata dal suo Cleaner quando il buffer non e' piu' raggiungibile,
+ * cioe' quando non ci sono piu' versioni della mappa che lo usano
+ */
+final class OffHeapMap implements IntMap {
+
+	private static final int MAX_ENTRIES = Integer.MAX_VALUE / Integer.BYTES; // capacita' massima di un buffer
+	private static final int DELTA = 8;
+	private static final int MIN_DELTA = 64; // il delta puo' sempre avere almeno MIN_DELTA associazioni
+	private static final Value DELETED = new Value() {
+	};
+
+	private static volatile int threshold = Integer.MAX_VALUE; // dimensione minima delle mappe fuori dallo heap, nessuna per default
+
+	private final IntBuffer keys; // chiavi ordinate, null se sono base, base + 1, ...
+	private final int base;
+	private final IntBuffer values; // valori come int, 0 e 1 per i booleani
+	private final boolean bools;
+	private final PersistentBTree delta;
+	private final int size;
+	private Ranks ranks; // calcolati alla prima richiesta, vedi 'ranks()'
+
+	/*
+	 * posizioni delle chiavi del delta nella mappa, per posizionare un cursore senza visitare le associazioni
+	 * precedenti: 'ends[t]' e' l'indice nella mappa della prima associazione dopo la t-esima chiave del delta e
+	 * 'adjust[t]' e' la differenza tra l'indice nella mappa e quello nei buffer delle associazioni dei buffer
+	 * che la precedono; i campi final garantiscono che un worker veda array completi anche se un altro
+	 * worker li ha appena calcolati (al piu' vengono calcolati due volte)
+	 */
+	private static final class Ranks {
+		final int[] ends;
+		final int[] adjust;
+
+		Ranks(int[] ends, int[] adjust) {
+			this.ends = ends;
+			this.adjust = adjust;
+		}
+	}
+
+	private OffHeapMap(IntBuffer keys, int base, IntBuffer values, boolean bools, PersistentBTree delta, int size) {
+		this.keys = keys;
+		this.base = base;
+		this.values = values;
+		this.bools = bools;
+		this.delta = delta;
+		this.size = size;
+	}
+
+	static void setThreshold(int size) {
+		threshold = size;
+	}
+
+	static int threshold() {
+		return threshold;
+	}
+
+	// true se i valori non null di 'values' sono tutti interi o tutti booleani
+	static boolean fits(Value[] values, int length) {
+		Value first = null;
+		for (var i = 0; i < length; i++) {
+			var value = values[i];
+			if (value == null)
+				continue;
+			if (first == null)
+				first = value;
+			if (!(value instanceof IntValue && first instanceof IntValue
+					|| value instanceof BoolValue && first instanceof BoolValue))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean offHeap(int size) {
+		return size > 0 && size >= threshold && size <= MAX_ENTRIES;
+	}
+
+	// mappa con le prime 'size' associazioni degli array paralleli 'keys' (ordinate) e 'values', fuori dallo heap se possibile
+	static IntMap sorted(int[] keys, Value[] values, int size) {
+		if (!offHeap(size) || !fits(values, size))
+			return PersistentBTree.sorted(keys, values, size);
+		var bools = values[0] instanceof BoolValue;
+		var raw = new int[size];
+		for (var i = 0; i < size; i++)
+			raw[i] = bools ? values[i] == BoolValue.TRUE ? 1 : 0 : values[i].toInt();
+		return of(keys, raw, size, bools);
+	}
+
+	// mappa con le chiavi low, low + 1, ..., low + size - 1 tutte associate a 'value'
+	static IntMap range(int low, int size, Value value) {
+		var bools = value instanceof BoolValue;
+		if (!offHeap(size) || !(bools || value instanceof IntValue))
+			return PersistentBTree.range(low, size, value);
+		var values = allocate(size);
+		var raw = bools ? value == BoolValue.TRUE ? 1 : 0 : value.toInt();
+		for (var i = 0; i < size; i++)
+			values.put(i, raw);
+		return new OffHeapMap(null, low, values, bools, PersistentBTree.EMPTY, size);
+	}
+
+	private static OffHeapMap of(int[] keys, int[] raw, int size, boolean bools) {
+		IntBuffer keyBuffer = null;
+		if ((long) keys[size - 1] - keys[0] != size - 1) // chiavi non contigue
+			keyBuffer = allocate(size).put(0, keys, 0, size);
+		return new OffHeapMap(keyBuffer, keys[0], allocate(size).put(0, raw, 0, size), bools, PersistentBTree.EMPTY,
+				size);
+	}
+
+	private static IntBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	// accesso ai buffer
+
+	private int stored() { // numero di associazioni nei buffer
+		return values.capacity();
+	}
+
+	private int storedKey(int i) {
+		return keys == null ? base + i : keys.get(i);
+	}
+
+	private Value storedValue(int i) {
+		var raw = values.get(i);
+		return bools ? BoolValue.of(raw != 0) : IntValue.of(raw);
+	}
+
+	// indice di 'key' nei buffer, -1 se la chiave non e' presente
+	private int storedIndex(int key) {
+		if (keys == null) {
+			var i = (long) key - base;
+			return i >= 0 && i < stored() ? (int) i : -1;
+		}
+		var lo = 0;
+		var hi = stored() - 1;
+		while (lo <= hi) {
+			var mid = (lo + hi) >>> 1;
+			var midKey = keys.get(mid);
+			if (midKey < key)
+				lo = mid + 1;
+			else if (midKey > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	// numero di chiavi nei buffer minori di 'key'
+	private int storedBelow(int key) {
+		if (keys == null)
+			return (int) Math.max(0, Math.min(stored(), (long) key - base));
+		var lo = 0;
+		var hi = stored();
+		while (lo < hi) {
+			var mid = (lo + hi) >>> 1;
+			if (keys.get(mid) < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Value get(int key) {
+		var value = delta.get(key);
+		if (value != null)
+			return value == DELETED ? null : value;
+		var i = storedIndex(key);
+		return i >= 0 ? storedValue(i) : null;
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public IntMap put(int key, Value value) {
+		var newSize = containsKey(key) ? size : size + 1;
+		return with(delta.put(key, value), newSize);
+	}
+
+	@Override
+	public IntMap remove(int key) {
+		if (!containsKey(key))
+			return this;
+		return with(storedIndex(key) >= 0 ? delta.put(key, DELETED) : delta.remove(key), size - 1);
+	}
+
+	@Override
+	public IntMap put(int key, Value value, Object edit) {
+		var newSize = containsKey(key) ? size : size + 1; // prima di put, che puo' modificare il delta sul posto
+		return with(delta.put(key, value, edit), newSize);
+	}
+
+	@Override
+	public IntMap remove(int key, Object edit) {
+		if (!containsKey(key))
+			return this;
+		return with(storedIndex(key) >= 0 ? delta.put(key, DELETED, edit) : delta.remove(key, edit), size - 1);
+	}
+
+	// nuova versione con gli stessi buffer, oppure con nuovi buffer se il delta e' diventato troppo grande
+	private IntMap with(PersistentBTree newDelta, int newSize) {
+		var map = new OffHeapMap(keys, base, values, bools, newDelta, newSize);
+		return newDelta.size() <= Math.max(MIN_DELTA, stored() / DELTA) ? map : map.merged();
+	}
+
+	// le associazioni della mappa in nuovi buffer, o in un albero se il delta contiene valori di un altro tipo
+	private IntMap merged() {
+		for (var i = delta.cursor(); i.next();) {
+			var value = i.value();
+			if (value != DELETED && !(bools ? value instanceof BoolValue : value instanceof IntValue))
+				return tree();
+		}
+		if (size == 0)
+			return PersistentBTree.EMPTY;
+		var mergedKeys = allocate(size); // fusione delle due sequenze ordinate di chiavi, senza copie sullo heap
+		var raw = allocate(size);
+		var m = 0;
+		var j = 0;
+		for (var i = delta.cursor(); i.next();) {
+			var key = i.key();
+			for (; j < stored() && storedKey(j) < key; j++, m++) {
+				mergedKeys.put(m, storedKey(j));
+				raw.put(m, values.get(j));
+			}
+			if (j < stored() && storedKey(j) == key)
+				j++;
+			var value = i.value();
+			if (value != DELETED) {
+				mergedKeys.put(m, key);
+				raw.put(m++, bools ? value == BoolValue.TRUE ? 1 : 0 : value.toInt());
+			}
+		}
+		for (; j < stored(); j++, m++) {
+			mergedKeys.put(m, storedKey(j));
+			raw.put(m, values.get(j));
+		}
+		var first = mergedKeys.get(0);
+		var contiguous = (long) mergedKeys.get(size - 1) - first == size - 1;
+		return new OffHeapMap(contiguous ? null : mergedKeys, first, raw, bools, PersistentBTree.EMPTY, size);
+	}
+
+	private PersistentBTree tree() {
+		var treeKeys = new int[size];
+		var treeValues = new Value[size];
+		var n = 0;
+		for (var i = cursor(); i.next(); n++) {
+			treeKeys[n] = i.key();
+			treeValues[n] = i.value();
+		}
+		return PersistentBTree.sorted(treeKeys, treeValues, n);
+	}
+
+	@Override
+	public DictCursor cursor() {
+		return new Cursor();
+	}
+
+	/*
+	 * O(log n) dopo il calcolo dei ranghi del delta, O(d log n) una volta sola per ogni versione con d chiavi nel delta:
+	 * la t-esima chiave del delta e' la prima dopo l'associazione di indice 'from' se 'ends[t] > from', e le
+	 * associazioni dei buffer prima di essa sono in posizione 'from - adjust[t]'
+	 */
+	@Override
+	public DictCursor cursor(int from) {
+		if (delta.size() == 0) // l'indice nei buffer coincide con quello nella mappa
+			return new Cursor(Math.min(from, size), 0);
+		var ranks = ranks();
+		var lo = 0;
+		var hi = ranks.ends.length;
+		while (lo < hi) {
+			var mid = (lo + hi) >>> 1;
+			if (ranks.ends[mid] <= from)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		var adjust = lo < ranks.adjust.length ? ranks.adjust[lo] : size - stored();
+		return new Cursor((int) Math.min((long) from - adjust, stored()), lo);
+	}
+
+	private Ranks ranks() {
+		var ranks = this.ranks;
+		if (ranks != null)
+			return ranks;
+		var ends = new int[delta.size()];
+		var adjust = new int[ends.length];
+		var difference = 0; // associazioni aggiunte dal delta meno quelle rimosse, fino alla chiave corrente
+		var t = 0;
+		for (var i = delta.cursor(); i.next(); t++) {
+			var key = i.key();
+			var below = storedBelow(key);
+			var live = i.value() != DELETED;
+			var replaces = below < stored() && storedKey(below) == key;
+			adjust[t] = difference;
+			ends[t] = below + difference + (live ? 1 : 0);
+			if (replaces != live)
+				difference += live ? 1 : -1;
+		}
+		return this.ranks = new Ranks(ends, adjust);
+	}
+
+	// visita in ordine le associazioni dei buffer e del delta: una chiave del delta nasconde quella dei buffer
+	private final class Cursor implements DictCursor {
+		private final DictCursor deltaCursor;
+		private boolean inDelta; // true se il cursore del delta e' su un'associazione ancora da visitare
+		private int next; // indice nei buffer della prossima associazione da visitare
+		private boolean valid; // true se il cursore e' su un'associazione
+		private int key;
+		private int index; // indice nei buffer dell'associazione corrente, -1 se e' nel delta
+		private Value value; // valore dell'associazione corrente del delta
+
+		Cursor() {
+			this(0, 0);
+		}
+
+		// a partire dall'associazione di indice 'from' nei buffer e da quella di indice 'deltaFrom' nel delta
+		Cursor(int from, int deltaFrom) {
+			deltaCursor = delta.cursor(deltaFrom);
+			next = from;
+			inDelta = deltaCursor.next();
+		}
+
+		@Override
+		public boolean next() {
+			while (inDelta || next < stored()) {
+				if (inDelta && (next >= stored() || deltaCursor.key() <= storedKey(next))) {
+					key = deltaCursor.key();
+					index = -1;
+					value = deltaCursor.value();
+					if (next < stored() && storedKey(next) == key)
+						next++;
+					inDelta = deltaCursor.next();
+					if (value != DELETED)
+						return valid = true;
+				} else {
+					key = storedKey(next);
+					index = next++;
+					return valid = true;
+				}
+			}
+			return valid = false;
+		}
+
+		@Override
+		public int key() {
+			checkCurrent();
+			return key;
+		}
+
+		@Override
+		public Value value() { // i valori dei buffer vengono creati solo quando sono letti
+			checkCurrent();
+			return index >= 0 ? storedValue(index) : value;
+		}
+
+		private void checkCurrent() {
+			if (!valid)
+				throw new NoSuchElementException();
+		}
+	}
+}
@@ -2,11 +2,29 @@ package projectLabo.visitors.execution;
 
 import static java.util.Objects.requireNonNull;
 
-public record PairValue(Value fstVal, Value sndVal) implements Value {
+/*
+ * coppia immutabile di valori; l'hash strutturale viene calcolato una volta alla creazione,
+ * in tempo costante perche' anche coppie e dizionari componenti hanno l'hash gia' calcolato,
+ * quindi equals scarta in O(1) quasi tutte le coppie diverse
+ */
+public final class PairValue implements Value {
 
-	public PairValue {
-		requireNonNull(fstVal);
-		requireNonNull(sndVal);
+	private final Value fstVal;
+	private final Value sndVal;
+	private final int hash;
+
+	public PairValue(Value fstVal, Value sndVal) {
+		this.fstVal = requireNonNull(fstVal);
+		this.sndVal = requireNonNull(sndVal);
+		hash = 31 * fstVal.hashCode() + sndVal.hashCode();
+	}
+
+	public Value fstVal() {
+		return fstVal;
+	}
+
+	public Value sndVal() {
+		return sndVal;
 	}
 
 	@Override
@@ -14,6 +32,19 @@ public record PairValue(Value fstVal, Value sndVal) implements Value {
 		return this;
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		return obj instanceof PairValue pair && hash == pair.hash && fstVal.equals(pair.fstVal)
+				&& sndVal.equals(pair.sndVal);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("(%s,%s)", fstVal, sndVal);
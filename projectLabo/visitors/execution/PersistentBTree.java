@@ -0,0 +1,699 @@
+package projectLabo.visitors.execution;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * mappa ordinata persistente da chiavi intere a valori, implementata come B+tree con path copying:
+ * put e remove non modificano mai l'albero corrente, ma restituiscono una nuova versione
+ * che condivide con la precedente tutti i nodi non toccati (costo O(log n) in tempo e memoria)
+ *
+ * le foglie memorizzano le chiavi in un array ordinato di int e i valori in un array parallelo;
+ * finche' tutti i valori di una foglia sono interi (per esempio nei dizionari [INT:INT]) anche i valori
+ * sono memorizzati come int, senza alcun oggetto per associazione
+ *
+ * le versioni transitorie di put e remove (come i transient di Clojure) ricevono un token 'edit':
+ * i nodi marcati con lo stesso token appartengono solo a chi possiede il token e vengono modificati
+ * sul posto, gli altri vengono copiati una volta e marcati; le foglie marcate hanno spazio libero
+ * in fondo agli array, quindi anche gli inserimenti avvengono sul posto
+ */
+final class PersistentBTree implements IntMap {
+
+	private static final int MAX = 64; // numero massimo di associazioni per foglia e di figli per nodo interno
+	private static final int MIN = MAX / 4; // sotto questa soglia un nodo viene fuso con un fratello
+
+	static final PersistentBTree EMPTY = new PersistentBTree(null);
+
+	private abstract static sealed class Node permits Leaf, Inner {
+		int[] keys; // foglia: chiavi ordinate; nodo interno: chiave minima di ogni figlio
+		int count; // numero di elementi usati di 'keys', le foglie transitorie possono avere spazio libero
+		Object edit; // token del proprietario che puo' modificare il nodo sul posto, null se il nodo e' immutabile
+
+		Node(int[] keys) {
+			this.keys = keys;
+			this.count = keys.length;
+		}
+
+		final int count() {
+			return count;
+		}
+
+		final int minKey() {
+			return keys[0];
+		}
+
+		abstract int size(); // numero di associazioni nel sottoalbero
+
+		abstract Node slice(int from, int to);
+
+		abstract Node concat(Node other); // pre-condizione: 'other' dello stesso tipo e con chiavi maggiori
+	}
+
+	private static final class Leaf extends Node {
+		int[] ints; // valori interi, null se la foglia contiene altri valori
+		Value[] values; // valori generici, null se la foglia e' specializzata sugli interi
+
+		Leaf(int[] keys, int[] ints, Value[] values) {
+			super(keys);
+			this.ints = ints;
+			this.values = values;
+		}
+
+		@Override
+		int size() {
+			return count;
+		}
+
+		int indexOf(int key) {
+			return Arrays.binarySearch(keys, 0, count, key);
+		}
+
+		Value valueAt(int i) {
+			return ints != null ? IntValue.of(ints[i]) : values[i];
+		}
+
+		boolean sameValueAt(int i, Value value) {
+			if (ints != null)
+				return value instanceof IntValue && value.toInt() == ints[i];
+			return values[i] == value;
+		}
+
+		// valori generici in un nuovo array di lunghezza 'length', converte la foglia specializzata se necessario
+		Value[] boxedValues(int length) {
+			if (values != null)
+				return Arrays.copyOf(values, length);
+			var boxed = new Value[length];
+			for (var i = 0; i < count; i++)
+				boxed[i] = IntValue.of(ints[i]);
+			return boxed;
+		}
+
+		// nuova foglia dove 'value' si trova in posizione 'i', inserito se 'insert', altrimenti sostituito
+		Leaf with(int i, boolean insert, int key, Value value) {
+			var newKeys = insert ? insertAt(keys, count, i, key) : Arrays.copyOf(keys, count);
+			if (ints != null && value instanceof IntValue) {
+				var newInts = insert ? insertAt(ints, count, i, value.toInt()) : Arrays.copyOf(ints, count);
+				newInts[i] = value.toInt();
+				return new Leaf(newKeys, newInts, null);
+			}
+			var newValues = insert ? insertAt(boxedValues(count), count, i, value) : boxedValues(count);
+			newValues[i] = value;
+			return new Leaf(newKeys, null, newValues);
+		}
+
+		Leaf without(int i) {
+			return new Leaf(removeAt(keys, count, i), ints != null ? removeAt(ints, count, i) : null,
+					values != null ? removeAt(values, count, i) : null);
+		}
+
+		@Override
+		Leaf slice(int from, int to) {
+			return new Leaf(Arrays.copyOfRange(keys, from, to), ints != null ? Arrays.copyOfRange(ints, from, to) : null,
+					values != null ? Arrays.copyOfRange(values, from, to) : null);
+		}
+
+		@Override
+		Leaf concat(Node other) {
+			var right = (Leaf) other;
+			var keys = concatArrays(this.keys, count, right.keys, right.count);
+			if (ints != null && right.ints != null)
+				return new Leaf(keys, concatArrays(ints, count, right.ints, right.count), null);
+			return new Leaf(keys, null, concatArrays(boxedValues(count), count, right.boxedValues(right.count), right.count));
+		}
+
+		// operazioni transitorie
+
+		// la foglia stessa se appartiene a 'edit', altrimenti una sua copia marcata con 'edit'
+		Leaf editable(Object edit) {
+			if (this.edit == edit)
+				return this;
+			var capacity = Math.min(MAX + 1, count + count / 2 + 1); // spazio per gli inserimenti successivi
+			var copy = new Leaf(Arrays.copyOf(keys, capacity), ints != null ? Arrays.copyOf(ints, capacity) : null,
+					values != null ? Arrays.copyOf(values, capacity) : null);
+			copy.count = count;
+			copy.edit = edit;
+			return copy;
+		}
+
+		// pre-condizione: la foglia appartiene al proprietario del token
+		void set(int i, Value value) {
+			if (ints != null && !(value instanceof IntValue)) { // la foglia perde la specializzazione sugli interi
+				values = boxedValues(keys.length);
+				ints = null;
+			}
+			if (ints != null)
+				ints[i] = value.toInt();
+			else
+				values[i] = value;
+		}
+
+		// pre-condizione: la foglia appartiene al proprietario del token
+		void insert(int i, int key, Value value) {
+			if (count == keys.length) {
+				var capacity = Math.min(MAX + 1, 2 * count);
+				keys = Arrays.copyOf(keys, capacity);
+				if (ints != null)
+					ints = Arrays.copyOf(ints, capacity);
+				else
+					values = Arrays.copyOf(values, capacity);
+			}
+			System.arraycopy(keys, i, keys, i + 1, count - i);
+			keys[i] = key;
+			if (ints != null)
+				System.arraycopy(ints, i, ints, i + 1, count - i);
+			else
+				System.arraycopy(values, i, values, i + 1, count - i);
+			count++;
+			set(i, value);
+		}
+
+		// pre-condizione: la foglia appartiene al proprietario del token
+		void delete(int i) {
+			System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+			if (ints != null)
+				System.arraycopy(ints, i + 1, ints, i, count - i - 1);
+			else {
+				System.arraycopy(values, i + 1, values, i, count - i - 1);
+				values[count - 1] = null;
+			}
+			count--;
+		}
+	}
+
+	private static final class Inner extends Node {
+		final Node[] children;
+		int size;
+
+		Inner(int[] keys, Node[] children, int size) {
+			super(keys);
+			this.children = children;
+			this.size = size;
+		}
+
+		Inner(Node[] children) {
+			this(minKeys(children), children, totalSize(children));
+		}
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		// indice del figlio che puo' contenere 'key'
+		int childIndex(int key) {
+			var i = Arrays.binarySearch(keys, key);
+			return i >= 0 ? i : Math.max(0, -i - 2);
+		}
+
+		// nuovo nodo dove il figlio in posizione 'i' e' sostituito da 'child', eventualmente diviso se troppo grande
+		Inner replace(int i, Node child) {
+			return replace(i, child, size - children[i].size() + child.size());
+		}
+
+		private Inner replace(int i, Node child, int newSize) {
+			if (child.count() <= MAX) {
+				var newKeys = keys.clone();
+				var newChildren = children.clone();
+				newKeys[i] = child.minKey();
+				newChildren[i] = child;
+				return new Inner(newKeys, newChildren, newSize);
+			}
+			var half = child.count() / 2;
+			var left = child.slice(0, half);
+			var right = child.slice(half, child.count());
+			var newKeys = insertAt(keys, count, i + 1, right.minKey());
+			var newChildren = insertAt(children, i + 1, right);
+			newKeys[i] = left.minKey();
+			newChildren[i] = left;
+			return new Inner(newKeys, newChildren, newSize);
+		}
+
+		// come 'replace', ma se 'child' e' troppo piccolo viene fuso con un fratello adiacente
+		Inner replaceShrunk(int i, Node child) {
+			return replaceShrunk(i, child, size - children[i].size() + child.size());
+		}
+
+		private Inner replaceShrunk(int i, Node child, int newSize) {
+			if (child.count() >= MIN || count() == 1)
+				return child.count() == 0 ? removeChild(i, newSize) : replace(i, child, newSize);
+			var j = i > 0 ? i - 1 : i + 1; // fratello con cui fondere
+			var lo = Math.min(i, j);
+			var merged = i < j ? child.concat(children[j]) : children[j].concat(child);
+			var newKeys = removeAt(keys, count, lo + 1);
+			var newChildren = removeAt(children, lo + 1);
+			newKeys[lo] = merged.minKey();
+			newChildren[lo] = merged;
+			var shrunk = new Inner(newKeys, newChildren, newSize);
+			return merged.count() > MAX ? shrunk.replace(lo, merged) : shrunk;
+		}
+
+		private Inner removeChild(int i, int newSize) {
+			return new Inner(removeAt(keys, count, i), removeAt(children, i), newSize);
+		}
+
+		@Override
+		Inner slice(int from, int to) {
+			return new Inner(Arrays.copyOfRange(children, from, to));
+		}
+
+		@Override
+		Inner concat(Node other) {
+			var right = (Inner) other;
+			return new Inner(concatArrays(keys, count, right.keys, right.count), concatArrays(children, right.children),
+					size + right.size);
+		}
+
+		// operazioni transitorie
+
+		// il nodo stesso se appartiene a 'edit', altrimenti una sua copia marcata con 'edit'
+		Inner editable(Object edit) {
+			if (this.edit == edit)
+				return this;
+			var copy = new Inner(keys.clone(), children.clone(), size);
+			copy.edit = edit;
+			return copy;
+		}
+
+		/*
+		 * sostituisce sul posto il figlio in posizione 'i', il cui numero di associazioni e' cambiato di 'delta';
+		 * se il figlio deve essere diviso o fuso con un fratello il risultato e' un nuovo nodo
+		 * pre-condizione: il nodo appartiene al proprietario del token
+		 */
+		Inner setChild(int i, Node child, int delta, Object edit) {
+			var newSize = size + delta;
+			if (child.count() > MAX || (delta < 0 && child.count() < MIN)) {
+				var node = delta < 0 ? replaceShrunk(i, child, newSize) : replace(i, child, newSize);
+				node.edit = edit;
+				return node;
+			}
+			keys[i] = child.minKey();
+			children[i] = child;
+			size = newSize;
+			return this;
+		}
+
+		private static int[] minKeys(Node[] children) {
+			var keys = new int[children.length];
+			for (var i = 0; i < children.length; i++)
+				keys[i] = children[i].minKey();
+			return keys;
+		}
+
+		private static int totalSize(Node[] children) {
+			var size = 0;
+			for (var child : children)
+				size += child.size();
+			return size;
+		}
+	}
+
+	private final Node root; // null per la mappa vuota
+
+	private PersistentBTree(Node root) {
+		this.root = root;
+	}
+
+	@Override
+	public int size() {
+		return root == null ? 0 : root.size();
+	}
+
+	@Override
+	public Value get(int key) {
+		var leaf = findLeaf(key);
+		if (leaf == null)
+			return null;
+		var i = leaf.indexOf(key);
+		return i >= 0 ? leaf.valueAt(i) : null;
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		var leaf = findLeaf(key);
+		return leaf != null && leaf.indexOf(key) >= 0;
+	}
+
+	// true se le due mappe hanno le stesse associazioni; i sottoalberi condivisi dalle due versioni non vengono visitati
+	boolean sameEntries(PersistentBTree other) {
+		return size() == other.size() && (root == other.root || sameEntries(root, other.root));
+	}
+
+	private static boolean sameEntries(Node node, Node other) {
+		if (node == other)
+			return true;
+		if (node instanceof Inner inner && other instanceof Inner otherInner && inner.count() == otherInner.count()
+				&& Arrays.equals(inner.keys, 0, inner.count(), otherInner.keys, 0, otherInner.count())) {
+			// i figli con la stessa posizione hanno gli stessi intervalli di chiavi
+			for (var i = 0; i < inner.count(); i++) {
+				var child = inner.children[i];
+				var otherChild = otherInner.children[i];
+				if (child.size() != otherChild.size() || !sameEntries(child, otherChild))
+					return false;
+			}
+			return true;
+		}
+		// strutture diverse, le associazioni vengono confrontate in ordine
+		var it = new PersistentBTree(node).cursor();
+		var otherIt = new PersistentBTree(other).cursor();
+		while (it.next())
+			if (!otherIt.next() || it.key() != otherIt.key() || !it.value().equals(otherIt.value()))
+				return false;
+		return !otherIt.next();
+	}
+
+	private Leaf findLeaf(int key) {
+		var node = root;
+		while (node instanceof Inner inner)
+			node = inner.children[inner.childIndex(key)];
+		return (Leaf) node;
+	}
+
+	// mappa con le chiavi low, low + 1, ..., low + size - 1 tutte associate a 'value', costruita dal basso in O(size)
+	static PersistentBTree range(int low, int size, Value value) {
+		return build(size, (from, count) -> {
+			var keys = new int[count];
+			for (var j = 0; j < count; j++)
+				keys[j] = low + from + j;
+			int[] ints = null;
+			Value[] values = null;
+			if (value instanceof IntValue)
+				Arrays.fill(ints = new int[count], value.toInt());
+			else
+				Arrays.fill(values = new Value[count], value);
+			return new Leaf(keys, ints, values);
+		});
+	}
+
+	// mappa con le prime 'size' associazioni degli array paralleli 'keys' (ordinate) e 'values', costruita in O(size)
+	static PersistentBTree sorted(int[] keys, Value[] values, int size) {
+		return build(size, (from, count) -> {
+			var allInts = true;
+			for (var j = from; j < from + count && allInts; j++)
+				allInts = values[j] instanceof IntValue;
+			if (!allInts)
+				return new Leaf(Arrays.copyOfRange(keys, from, from + count), null,
+						Arrays.copyOfRange(values, from, from + count));
+			var ints = new int[count];
+			for (var j = 0; j < count; j++)
+				ints[j] = values[from + j].toInt();
+			return new Leaf(Arrays.copyOfRange(keys, from, from + count), ints, null);
+		});
+	}
+
+	// costruttore delle foglie di 'build', crea la foglia con le associazioni di indice da 'from' a 'from + count'
+	private interface LeafBuilder {
+		Leaf leaf(int from, int count);
+	}
+
+	// albero con 'size' associazioni costruito dal basso, un livello alla volta, con nodi pieni almeno per meta'
+	private static PersistentBTree build(int size, LeafBuilder builder) {
+		if (size == 0)
+			return EMPTY;
+		var nodes = new Node[groups(size)];
+		for (var i = 0; i < nodes.length; i++) {
+			var from = groupStart(size, nodes.length, i);
+			nodes[i] = builder.leaf(from, groupStart(size, nodes.length, i + 1) - from);
+		}
+		while (nodes.length > 1) { // un livello di nodi interni alla volta, fino alla radice
+			var parents = new Node[groups(nodes.length)];
+			for (var i = 0; i < parents.length; i++)
+				parents[i] = new Inner(Arrays.copyOfRange(nodes, groupStart(nodes.length, parents.length, i),
+						groupStart(nodes.length, parents.length, i + 1)));
+			nodes = parents;
+		}
+		return new PersistentBTree(nodes[0]);
+	}
+
+	// numero di nodi necessari per 'n' elementi, divisi in modo uniforme: ogni nodo ne ha almeno MAX / 2
+	private static int groups(int n) {
+		return (n + MAX - 1) / MAX;
+	}
+
+	private static int groupStart(int n, int groups, int i) {
+		return (int) ((long) n * i / groups);
+	}
+
+	@Override
+	public PersistentBTree put(int key, Value value) {
+		if (root == null)
+			return new PersistentBTree(new Leaf(new int[0], new int[0], null).with(0, true, key, value));
+		var newRoot = put(root, key, value);
+		if (newRoot == root)
+			return this;
+		if (newRoot.count() > MAX) // la radice e' stata divisa: l'albero cresce di un livello
+			newRoot = new Inner(new int[] { newRoot.minKey() }, new Node[] { newRoot }, newRoot.size()).replace(0, newRoot);
+		return new PersistentBTree(newRoot);
+	}
+
+	@Override
+	public PersistentBTree remove(int key) {
+		if (!containsKey(key))
+			return this;
+		var newRoot = remove(root, key);
+		while (newRoot instanceof Inner inner && inner.count() == 1) // l'albero si abbassa di un livello
+			newRoot = inner.children[0];
+		return new PersistentBTree(newRoot.count() == 0 ? null : newRoot);
+	}
+
+	/*
+	 * operazioni ricorsive sui nodi, la profondita' e' logaritmica; un nodo restituito puo' avere temporaneamente
+	 * MAX + 1 elementi o meno di MIN elementi, il nodo padre provvede a dividerlo o a fonderlo
+	 */
+
+	private static Node put(Node node, int key, Value value) {
+		if (node instanceof Inner inner) {
+			var i = inner.childIndex(key);
+			var child = inner.children[i];
+			var newChild = put(child, key, value);
+			return newChild == child ? inner : inner.replace(i, newChild);
+		}
+		var leaf = (Leaf) node;
+		var i = leaf.indexOf(key);
+		if (i >= 0)
+			return leaf.sameValueAt(i, value) ? leaf : leaf.with(i, false, key, value);
+		return leaf.with(-i - 1, true, key, value);
+	}
+
+	// pre-condizione: 'key' e' presente nel sottoalbero
+	private static Node remove(Node node, int key) {
+		if (node instanceof Inner inner) {
+			var i = inner.childIndex(key);
+			return inner.replaceShrunk(i, remove(inner.children[i], key));
+		}
+		var leaf = (Leaf) node;
+		return leaf.without(leaf.indexOf(key));
+	}
+
+	// versione transitoria di put: i nodi che appartengono a 'edit' sono modificati sul posto
+	@Override
+	public PersistentBTree put(int key, Value value, Object edit) {
+		if (root == null)
+			return put(key, value);
+		var newRoot = put(root, key, value, edit);
+		if (newRoot.count() > MAX)
+			newRoot = new Inner(new int[] { newRoot.minKey() }, new Node[] { newRoot }, newRoot.size()).replace(0, newRoot);
+		return newRoot == root ? this : new PersistentBTree(newRoot);
+	}
+
+	// versione transitoria di remove; se la chiave non e' presente restituisce la mappa stessa
+	@Override
+	public PersistentBTree remove(int key, Object edit) {
+		if (!containsKey(key))
+			return this;
+		var newRoot = remove(root, key, edit);
+		while (newRoot instanceof Inner inner && inner.count() == 1)
+			newRoot = inner.children[0];
+		if (newRoot.count() == 0)
+			return EMPTY;
+		return newRoot == root ? this : new PersistentBTree(newRoot);
+	}
+
+	private static Node put(Node node, int key, Value value, Object edit) {
+		if (node instanceof Inner inner) {
+			var i = inner.childIndex(key);
+			var child = inner.children[i];
+			var oldSize = child.size();
+			var newChild = put(child, key, value, edit);
+			if (newChild == child && newChild.size() == oldSize && child.edit != edit)
+				return inner; // nessuna modifica
+			return inner.editable(edit).setChild(i, newChild, newChild.size() - oldSize, edit);
+		}
+		var leaf = (Leaf) node;
+		var i = leaf.indexOf(key);
+		if (i >= 0) {
+			if (leaf.sameValueAt(i, value))
+				return leaf;
+			leaf = leaf.editable(edit);
+			leaf.set(i, value);
+		} else {
+			leaf = leaf.editable(edit);
+			leaf.insert(-i - 1, key, value);
+		}
+		return leaf;
+	}
+
+	// pre-condizione: 'key' e' presente nel sottoalbero
+	private static Node remove(Node node, int key, Object edit) {
+		if (node instanceof Inner inner) {
+			var i = inner.childIndex(key);
+			var newChild = remove(inner.children[i], key, edit);
+			return inner.editable(edit).setChild(i, newChild, -1, edit);
+		}
+		var leaf = ((Leaf) node).editable(edit);
+		leaf.delete(leaf.indexOf(key));
+		return leaf;
+	}
+
+	/* utilita' per la copia degli array; 'count' e' il numero di elementi usati dell'array */
+
+	private static int[] insertAt(int[] array, int count, int i, int elem) {
+		var res = new int[count + 1];
+		System.arraycopy(array, 0, res, 0, i);
+		res[i] = elem;
+		System.arraycopy(array, i, res, i + 1, count - i);
+		return res;
+	}
+
+	private static <T> T[] insertAt(T[] array, int i, T elem) {
+		return insertAt(array, array.length, i, elem);
+	}
+
+	private static <T> T[] insertAt(T[] array, int count, int i, T elem) {
+		var res = Arrays.copyOf(array, count + 1);
+		System.arraycopy(array, i, res, i + 1, count - i);
+		res[i] = elem;
+		return res;
+	}
+
+	private static int[] removeAt(int[] array, int count, int i) {
+		var res = new int[count - 1];
+		System.arraycopy(array, 0, res, 0, i);
+		System.arraycopy(array, i + 1, res, i, res.length - i);
+		return res;
+	}
+
+	private static <T> T[] removeAt(T[] array, int i) {
+		return removeAt(array, array.length, i);
+	}
+
+	private static <T> T[] removeAt(T[] array, int count, int i) {
+		var res = Arrays.copyOf(array, count - 1);
+		System.arraycopy(array, i + 1, res, i, res.length - i);
+		return res;
+	}
+
+	private static int[] concatArrays(int[] left, int leftCount, int[] right, int rightCount) {
+		var res = Arrays.copyOf(left, leftCount + rightCount);
+		System.arraycopy(right, 0, res, leftCount, rightCount);
+		return res;
+	}
+
+	private static <T> T[] concatArrays(T[] left, T[] right) {
+		return concatArrays(left, left.length, right, right.length);
+	}
+
+	private static <T> T[] concatArrays(T[] left, int leftCount, T[] right, int rightCount) {
+		var res = Arrays.copyOf(left, leftCount + rightCount);
+		System.arraycopy(right, 0, res, leftCount, rightCount);
+		return res;
+	}
+
+	/*
+	 * cursore per la visita in ordine crescente delle chiavi: mantiene il cammino dalla radice
+	 * alla foglia corrente e scorre le foglie da sinistra a destra
+	 */
+	final class Cursor implements DictCursor {
+		private final Inner[] path;
+		private final int[] indexes;
+		private int depth; // numero di nodi interni nel cammino
+		private Leaf leaf;
+		private int pos = -1;
+
+		private Cursor() {
+			var height = 0;
+			for (var node = root; node instanceof Inner inner; node = inner.children[0])
+				height++;
+			path = new Inner[height];
+			indexes = new int[height];
+			if (root != null)
+				descend(root);
+		}
+
+		// cursore posizionato prima dell'associazione di indice 'from', trovata con le dimensioni dei sottoalberi
+		private Cursor(int from) {
+			this();
+			if (from >= size()) {
+				leaf = null;
+				return;
+			}
+			depth = 0;
+			var node = root;
+			while (node instanceof Inner inner) {
+				var i = 0;
+				while (from >= inner.children[i].size())
+					from -= inner.children[i++].size();
+				path[depth] = inner;
+				indexes[depth++] = i;
+				node = inner.children[i];
+			}
+			leaf = (Leaf) node;
+			pos = from - 1;
+		}
+
+		private void descend(Node node) {
+			while (node instanceof Inner inner) {
+				path[depth] = inner;
+				indexes[depth++] = 0;
+				node = inner.children[0];
+			}
+			leaf = (Leaf) node;
+			pos = -1;
+		}
+
+		@Override
+		public boolean next() {
+			if (leaf == null)
+				return false;
+			if (++pos < leaf.count())
+				return true;
+			while (depth > 0) { // risale fino al primo nodo interno con un figlio ancora da visitare
+				var inner = path[depth - 1];
+				if (++indexes[depth - 1] < inner.count()) {
+					descend(inner.children[indexes[depth - 1]]);
+					pos = 0;
+					return true;
+				}
+				depth--;
+			}
+			leaf = null;
+			return false;
+		}
+
+		@Override
+		public int key() {
+			checkCurrent();
+			return leaf.keys[pos];
+		}
+
+		@Override
+		public Value value() {
+			checkCurrent();
+			return leaf.valueAt(pos);
+		}
+
+		private void checkCurrent() {
+			if (leaf == null || pos < 0)
+				throw new NoSuchElementException();
+		}
+	}
+
+	@Override
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	@Override
+	public Cursor cursor(int from) {
+		return new Cursor(from);
+	}
+}
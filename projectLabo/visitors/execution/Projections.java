@@ -0,0 +1,154 @@
+package projectLabo.visitors.execution;
+
+import java.util.List;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+
+/*
+ * analisi del corpo di un ciclo 'for': il visitor restituisce true se la variabile 'var' compare
+ * in un punto diverso dall'argomento di fst o snd, oppure viene assegnata; in tal caso il suo valore
+ * puo' essere copiato altrove e deve essere una vera PairValue, altrimenti basta una 'LoopEntry'
+ *
+ * l'analisi e' per nome, quindi le variabili omonime dichiarate nel corpo sono trattate come 'var'
+ * (risultato conservativo)
+ */
+public final class Projections implements Visitor<Boolean> {
+
+	private final String name;
+
+	private Projections(Variable var) {
+		name = var.name();
+	}
+
+	// true se nel corpo 'forBlock' la variabile 'var' e' usata solo come argomento di fst e snd
+	public static boolean onlyProjected(Variable var, Block forBlock) {
+		return !forBlock.accept(new Projections(var));
+	}
+
+	private boolean escapes(Exp exp) {
+		return exp != null && exp.accept(this);
+	}
+
+	private boolean projected(Exp exp) {
+		return exp instanceof Variable var ? false : escapes(exp); // fst var e snd var non copiano la coppia
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Boolean visitLangProg(StmtSeq stmtSeq) {
+		return stmtSeq.accept(this);
+	}
+
+	@Override
+	public Boolean visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			if (stmt.accept(this))
+				return true;
+		return false;
+	}
+
+	// statements
+
+	@Override
+	public Boolean visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		return escapes(exp) || thenBlock.accept(this) || elseBlock != null && elseBlock.accept(this);
+	}
+
+	@Override
+	public Boolean visitPrintStmt(Exp exp) {
+		return escapes(exp);
+	}
+
+	@Override
+	public Boolean visitVarStmt(Variable var, Exp exp) {
+		return escapes(exp);
+	}
+
+	@Override
+	public Boolean visitBlock(StmtSeq stmtSeq) {
+		return stmtSeq.accept(this);
+	}
+
+	@Override
+	public Boolean visitAssignStmt(Variable var, Exp exp) {
+		return var.name().equals(name) || escapes(exp);
+	}
+
+	@Override
+	public Boolean visitForStmt(Variable var, Exp exp, Block forBlock) {
+		return escapes(exp) || forBlock.accept(this);
+	}
+
+	// expressions
+
+	@Override
+	public Boolean visitAdd(Exp left, Exp right) {
+		return escapes(left) || escapes(right);
+	}
+
+	@Override
+	public Boolean visitBoolLiteral(boolean value) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitEq(Exp left, Exp right) {
+		return escapes(left) || escapes(right);
+	}
+
+	@Override
+	public Boolean visitFst(Exp exp) {
+		return projected(exp);
+	}
+
+	@Override
+	public Boolean visitIntLiteral(int value) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitMinus(Exp exp) {
+		return escapes(exp);
+	}
+
+	@Override
+	public Boolean visitMul(Exp left, Exp right) {
+		return escapes(left) || escapes(right);
+	}
+
+	@Override
+	public Boolean visitPairLit(Exp left, Exp right) {
+		return escapes(left) || escapes(right);
+	}
+
+	@Override
+	public Boolean visitSnd(Exp exp) {
+		return projected(exp);
+	}
+
+	@Override
+	public Boolean visitVariable(Variable var) {
+		return var.name().equals(name);
+	}
+
+	@Override
+	public Boolean visitNot(Exp exp) {
+		return escapes(exp);
+	}
+
+	@Override
+	public Boolean visitAnd(Exp left, Exp right) {
+		return escapes(left) || escapes(right);
+	}
+
+	@Override
+	public Boolean visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		return escapes(dictExp) || escapes(keyExp) || escapes(valueExp);
+	}
+}
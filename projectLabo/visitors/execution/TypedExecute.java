@@ -0,0 +1,144 @@
+package projectLabo.visitors.execution;
+
+import java.io.PrintWriter;
+import static java.util.Objects.requireNonNull;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.visitors.typechecking.Typecheck;
+import static projectLabo.visitors.typechecking.AtomicType.*;
+
+/*
+ * variante di Execute per i programmi che hanno superato il typechecking: i tipi calcolati da
+ * 'Typecheck' garantiscono che gli operandi abbiano il tipo atteso, quindi le operazioni
+ * vengono eseguite senza i controlli dinamici (instanceof e conversioni che possono fallire)
+ *
+ * restano solo i controlli che il sistema di tipi non puo' garantire, come le chiavi mancanti;
+ * con l'opzione -ntc si usa sempre Execute
+ */
+public class TypedExecute extends Execute {
+
+	private final Typecheck typecheck; // tipi statici delle espressioni del programma
+
+	public TypedExecute(Typecheck typecheck) {
+		this.typecheck = requireNonNull(typecheck);
+	}
+
+	public TypedExecute(PrintWriter printWriter, Typecheck typecheck) {
+		super(printWriter);
+		this.typecheck = requireNonNull(typecheck);
+	}
+
+	private TypedExecute(PrintWriter printWriter, TypedExecute parent) {
+		super(printWriter, parent);
+		typecheck = parent.typecheck;
+	}
+
+	@Override
+	protected TypedExecute worker(PrintWriter printWriter) {
+		return new TypedExecute(printWriter, this);
+	}
+
+	private Value exp(Exp exp) {
+		return exp.accept(this);
+	}
+
+	// conversioni senza controlli, il tipo del valore e' garantito dal typechecking
+
+	private int intOf(Exp exp) {
+		return ((IntValue) exp(exp)).toInt();
+	}
+
+	private boolean boolOf(Exp exp) {
+		return exp(exp) == BoolValue.TRUE; // TRUE e FALSE sono le uniche istanze
+	}
+
+	// statements
+
+	@Override
+	public Value visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		if (boolOf(exp))
+			thenBlock.accept(this);
+		else if (elseBlock != null)
+			elseBlock.accept(this);
+		return null;
+	}
+
+	// expressions
+
+	@Override
+	public IntValue visitAdd(Exp left, Exp right) {
+		return IntValue.of(intOf(left) + intOf(right));
+	}
+
+	@Override
+	public BoolValue visitEq(Exp left, Exp right) {
+		var type = typecheck.typeOf(left);
+		if (type == INT)
+			return BoolValue.of(intOf(left) == intOf(right));
+		if (type == BOOL)
+			return BoolValue.of(exp(left) == exp(right));
+		return BoolValue.of(exp(left).equals(exp(right)));
+	}
+
+	@Override
+	public Value visitFst(Exp exp) {
+		return LoopEntry.fst(exp(exp));
+	}
+
+	@Override
+	public IntValue visitMinus(Exp exp) {
+		return IntValue.of(-intOf(exp));
+	}
+
+	@Override
+	public IntValue visitMul(Exp left, Exp right) {
+		return IntValue.of(intOf(left) * intOf(right));
+	}
+
+	@Override
+	public Value visitSnd(Exp exp) {
+		return LoopEntry.snd(exp(exp));
+	}
+
+	@Override
+	public BoolValue visitNot(Exp exp) {
+		return BoolValue.of(!boolOf(exp));
+	}
+
+	@Override
+	public BoolValue visitAnd(Exp left, Exp right) {
+		return BoolValue.of(boolOf(left) && boolOf(right));
+	}
+
+	@Override
+	public Value visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		if (op == Dict.DictOp.CREATE) {
+			var key = intOf(keyExp);
+			return intern(new DictValue().update(key, exp(valueExp)));
+		}
+		if (op == Dict.DictOp.RANGE) {
+			var low = intOf(dictExp);
+			var high = intOf(keyExp);
+			return intern(DictValue.range(low, high, exp(valueExp)));
+		}
+		var dict = (DictValue) dictOperand(dictExp);
+		var key = intOf(keyExp);
+		switch (op) {
+		case GET -> {
+			var value = dict.get(key);
+			if (value == null)
+				throw new InterpreterException("Missing key " + key);
+			return value;
+		}
+		case DELETE -> {
+			if (!dict.containsKey(key))
+				throw new InterpreterException("Missing key " + key);
+			return intern(dict.delete(key));
+		}
+		default -> {
+			return intern(dict.update(key, exp(valueExp)));
+		}
+		}
+	}
+}
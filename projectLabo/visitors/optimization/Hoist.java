@@ -0,0 +1,315 @@
+package projectLabo.visitors.optimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+import projectLabo.parser.ast.*;
+import projectLabo.visitors.Visitor;
+
+/*
+ * loop-invariant code motion: inside the body of 'for' loops, the maximal expressions that only
+ * read variables never declared nor assigned in the body of an enclosing loop are wrapped into
+ * 'InvariantExp' nodes, tagged with the outermost such loop
+ *
+ * expressions have no side effects, hence an invariant expression has the same value at every
+ * evaluation during an execution of its loop; the engine evaluates it lazily the first time it is
+ * reached and reuses the value until the loop is entered again, so an invariant that fails
+ * (for instance a GET of a missing key) still fails at its original point
+ *
+ * the pass needs the variables to be already resolved and can be applied with or without type checking
+ */
+public class Hoist implements Visitor<AST> {
+
+	private final ArrayList<BitSet> loops = new ArrayList<>(); // ids of the variables written in each enclosing loop, outermost first
+	private final IdentityHashMap<Exp, Integer> depths = new IdentityHashMap<>(); // outermost loop for which the expression is invariant
+	private int invariants; // number of invariant expressions, used as identifiers
+
+	// utility methods
+
+	private Exp exp(Exp exp) {
+		return (Exp) exp.accept(this);
+	}
+
+	private Block block(Block block) {
+		return block == null ? null : (Block) block.accept(this);
+	}
+
+	// wraps 'exp' if it is invariant for some enclosing loop and worth caching
+	private Exp hoist(Exp exp) {
+		if (exp == null || exp instanceof IntLiteral || exp instanceof BoolLiteral || exp instanceof Variable)
+			return exp;
+		var depth = depths.get(exp);
+		return depth <= loops.size() ? new InvariantExp(exp, invariants++, depth) : exp;
+	}
+
+	// builds a node from its optimized operands, which are wrapped only if the node is not invariant
+	private Exp node(Function<Exp[], Exp> make, Exp... operands) {
+		var depth = 1;
+		for (var operand : operands)
+			if (operand != null)
+				depth = Math.max(depth, depths.get(operand));
+		if (depth > loops.size())
+			for (var i = 0; i < operands.length; i++)
+				operands[i] = hoist(operands[i]);
+		var exp = make.apply(operands);
+		depths.put(exp, depth);
+		return exp;
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Prog visitLangProg(StmtSeq stmtSeq) {
+		return new LangProg((StmtSeq) stmtSeq.accept(this));
+	}
+
+	@Override
+	public StmtSeq visitStmtList(List<Stmt> stmts) {
+		var result = new ArrayList<Stmt>(stmts.size());
+		for (var stmt : stmts)
+			result.add((Stmt) stmt.accept(this));
+		return new StmtList(result);
+	}
+
+	// statements
+
+	@Override
+	public Stmt visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		return new IfStmt(hoist(exp(exp)), block(thenBlock), block(elseBlock));
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Exp exp) {
+		return new PrintStmt(hoist(exp(exp)));
+	}
+
+	@Override
+	public Stmt visitVarStmt(Variable var, Exp exp) {
+		return new VarStmt(var, hoist(exp(exp)));
+	}
+
+	@Override
+	public Block visitBlock(StmtSeq stmtSeq) {
+		return new Block((StmtSeq) stmtSeq.accept(this));
+	}
+
+	@Override
+	public Stmt visitAssignStmt(Variable var, Exp exp) {
+		return new AssignStmt(var, hoist(exp(exp)));
+	}
+
+	@Override
+	public Stmt visitForStmt(Variable var, Exp exp, Block forBlock) {
+		var iterable = hoist(exp(exp)); // evaluated in the enclosing loop
+		var written = new BitSet();
+		written.set(var.id());
+		forBlock.accept(new Writes(written));
+		loops.add(written);
+		var body = block(forBlock);
+		loops.remove(loops.size() - 1);
+		return new ForStmt(var, iterable, body);
+	}
+
+	// expressions
+
+	@Override
+	public Exp visitAdd(Exp left, Exp right) {
+		return node(ops -> new Add(ops[0], ops[1]), exp(left), exp(right));
+	}
+
+	@Override
+	public Exp visitBoolLiteral(boolean value) {
+		return node(ops -> new BoolLiteral(value));
+	}
+
+	@Override
+	public Exp visitEq(Exp left, Exp right) {
+		return node(ops -> new Eq(ops[0], ops[1]), exp(left), exp(right));
+	}
+
+	@Override
+	public Exp visitFst(Exp exp) {
+		return node(ops -> new Fst(ops[0]), exp(exp));
+	}
+
+	@Override
+	public Exp visitIntLiteral(int value) {
+		return node(ops -> new IntLiteral(value));
+	}
+
+	@Override
+	public Exp visitMinus(Exp exp) {
+		return node(ops -> new Minus(ops[0]), exp(exp));
+	}
+
+	@Override
+	public Exp visitMul(Exp left, Exp right) {
+		return node(ops -> new Mul(ops[0], ops[1]), exp(left), exp(right));
+	}
+
+	@Override
+	public Exp visitPairLit(Exp left, Exp right) {
+		return node(ops -> new PairLit(ops[0], ops[1]), exp(left), exp(right));
+	}
+
+	@Override
+	public Exp visitSnd(Exp exp) {
+		return node(ops -> new Snd(ops[0]), exp(exp));
+	}
+
+	@Override
+	public Exp visitVariable(Variable var) {
+		var depth = 1; // invariant only for the loops inside the innermost one writing the variable
+		for (var i = loops.size(); i > 0; i--)
+			if (loops.get(i - 1).get(var.id())) {
+				depth = i + 1;
+				break;
+			}
+		depths.put(var, depth);
+		return var;
+	}
+
+	@Override
+	public Exp visitNot(Exp exp) {
+		return node(ops -> new Not(ops[0]), exp(exp));
+	}
+
+	@Override
+	public Exp visitAnd(Exp left, Exp right) {
+		return node(ops -> new And(ops[0], ops[1]), exp(left), exp(right));
+	}
+
+	@Override
+	public Exp visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		if (op == Dict.DictOp.CREATE)
+			return node(ops -> new Dict(ops[0], ops[1]), exp(keyExp), exp(valueExp));
+		return node(ops -> new Dict(op, ops[0], ops[1], ops[2]), exp(dictExp), exp(keyExp),
+				valueExp == null ? null : exp(valueExp));
+	}
+
+	// collects the ids of the variables declared or assigned in a sequence of statements
+	private static class Writes implements Visitor<Void> {
+		private final BitSet written;
+
+		Writes(BitSet written) {
+			this.written = written;
+		}
+
+		@Override
+		public Void visitLangProg(StmtSeq stmtSeq) {
+			return stmtSeq.accept(this);
+		}
+
+		@Override
+		public Void visitStmtList(List<Stmt> stmts) {
+			for (var stmt : stmts)
+				stmt.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+			thenBlock.accept(this);
+			if (elseBlock != null)
+				elseBlock.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitPrintStmt(Exp exp) {
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Variable var, Exp exp) {
+			written.set(var.id());
+			return null;
+		}
+
+		@Override
+		public Void visitBlock(StmtSeq stmtSeq) {
+			return stmtSeq.accept(this);
+		}
+
+		@Override
+		public Void visitAssignStmt(Variable var, Exp exp) {
+			written.set(var.id());
+			return null;
+		}
+
+		@Override
+		public Void visitForStmt(Variable var, Exp exp, Block forBlock) {
+			written.set(var.id());
+			return forBlock.accept(this);
+		}
+
+		// expressions do not write variables
+
+		@Override
+		public Void visitAdd(Exp left, Exp right) {
+			return null;
+		}
+
+		@Override
+		public Void visitBoolLiteral(boolean value) {
+			return null;
+		}
+
+		@Override
+		public Void visitEq(Exp left, Exp right) {
+			return null;
+		}
+
+		@Override
+		public Void visitFst(Exp exp) {
+			return null;
+		}
+
+		@Override
+		public Void visitIntLiteral(int value) {
+			return null;
+		}
+
+		@Override
+		public Void visitMinus(Exp exp) {
+			return null;
+		}
+
+		@Override
+		public Void visitMul(Exp left, Exp right) {
+			return null;
+		}
+
+		@Override
+		public Void visitPairLit(Exp left, Exp right) {
+			return null;
+		}
+
+		@Override
+		public Void visitSnd(Exp exp) {
+			return null;
+		}
+
+		@Override
+		public Void visitVariable(Variable var) {
+			return null;
+		}
+
+		@Override
+		public Void visitNot(Exp exp) {
+			return null;
+		}
+
+		@Override
+		public Void visitAnd(Exp left, Exp right) {
+			return null;
+		}
+
+		@Override
+		public Void visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package projectLabo.visitors.optimization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import projectLabo.parser.ast.*;
+import projectLabo.visitors.Visitor;
+import projectLabo.visitors.execution.BoolValue;
+import projectLabo.visitors.execution.DictValue;
+import projectLabo.visitors.execution.IntValue;
+import projectLabo.visitors.execution.PairValue;
+import projectLabo.visitors.execution.Value;
+
+/*
+ * AST-to-AST optimizer: folds constant expressions and removes the branches of 'if' statements
+ * whose condition is a constant; the visitor returns the optimized node, null for a statement
+ * that has been removed
+ *
+ * the pass must be applied only to typechecked programs: type errors and undeclared variables
+ * are then impossible, and the only expressions that can fail at runtime are GET and DELETE on
+ * a missing key; such expressions are never folded away, so every runtime error is still raised
+ * at its original point
+ *
+ * constant dictionaries are rebuilt as a CREATE followed by UPDATEs in increasing key order;
+ * the empty dictionary has no literal, hence expressions evaluating to it are kept unfolded
+ */
+public class Optimize implements Visitor<AST> {
+
+	private final IdentityHashMap<Exp, Value> constants = new IdentityHashMap<>(); // value of constant expressions
+	private final IdentityHashMap<PairLit, Exp[]> pairs = new IdentityHashMap<>(); // components of pair literals
+	private final Set<Exp> safe = Collections.newSetFromMap(new IdentityHashMap<>()); // expressions that cannot fail
+
+	// utility methods
+
+	private Exp exp(Exp exp) {
+		return (Exp) exp.accept(this);
+	}
+
+	private Block block(Block block) {
+		return block == null ? null : (Block) block.accept(this);
+	}
+
+	private Value constant(Exp exp) {
+		return constants.get(exp);
+	}
+
+	// registers the result of a new node, which is safe if all its operands are safe
+	private Exp result(Exp exp, Value value, Exp... operands) {
+		if (value != null)
+			constants.put(exp, value);
+		for (var operand : operands)
+			if (!safe.contains(operand))
+				return exp;
+		safe.add(exp);
+		return exp;
+	}
+
+	// the literal expression for 'value', null if 'value' has no literal
+	private Exp literal(Value value) {
+		Exp exp;
+		if (value instanceof IntValue)
+			exp = new IntLiteral(value.toInt());
+		else if (value instanceof BoolValue)
+			exp = new BoolLiteral(value.toBool());
+		else if (value instanceof PairValue pair) {
+			var fst = literal(pair.fstVal());
+			var snd = literal(pair.sndVal());
+			if (fst == null || snd == null)
+				return null;
+			var pairLit = new PairLit(fst, snd);
+			pairs.put(pairLit, new Exp[] { fst, snd });
+			exp = pairLit;
+		} else {
+			exp = null;
+			for (var i = ((DictValue) value).cursor(); i.next();) {
+				var elem = literal(i.value());
+				if (elem == null)
+					return null;
+				var key = new IntLiteral(i.key());
+				exp = exp == null ? new Dict(key, elem) : new Dict(Dict.DictOp.UPDATE, exp, key, elem);
+			}
+			if (exp == null) // the empty dictionary
+				return null;
+		}
+		constants.put(exp, value);
+		safe.add(exp);
+		return exp;
+	}
+
+	// the literal for 'value' if it exists, otherwise 'exp', which evaluates to 'value'
+	private Exp fold(Exp exp, Value value, Exp... operands) {
+		var lit = literal(value);
+		return lit != null ? lit : result(exp, value, operands);
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Prog visitLangProg(StmtSeq stmtSeq) {
+		return new LangProg((StmtSeq) stmtSeq.accept(this));
+	}
+
+	@Override
+	public StmtSeq visitStmtList(List<Stmt> stmts) {
+		var result = new ArrayList<Stmt>(stmts.size());
+		for (var stmt : stmts) {
+			var optimized = (Stmt) stmt.accept(this);
+			if (optimized != null)
+				result.add(optimized);
+		}
+		return new StmtList(result);
+	}
+
+	// statements
+
+	@Override
+	public Stmt visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		var cond = exp(exp);
+		var value = constant(cond);
+		if (value == null)
+			return new IfStmt(cond, block(thenBlock), block(elseBlock));
+		// the untaken branch is removed, the taken one is kept as a block to preserve its level
+		return value.toBool() ? block(thenBlock) : block(elseBlock);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Exp exp) {
+		return new PrintStmt(exp(exp));
+	}
+
+	@Override
+	public Stmt visitVarStmt(Variable var, Exp exp) {
+		return new VarStmt(var, exp(exp));
+	}
+
+	@Override
+	public Block visitBlock(StmtSeq stmtSeq) {
+		return new Block((StmtSeq) stmtSeq.accept(this));
+	}
+
+	@Override
+	public Stmt visitAssignStmt(Variable var, Exp exp) {
+		return new AssignStmt(var, exp(exp));
+	}
+
+	@Override
+	public Stmt visitForStmt(Variable var, Exp exp, Block forBlock) {
+		return new ForStmt(var, exp(exp), block(forBlock));
+	}
+
+	// expressions
+
+	@Override
+	public Exp visitAdd(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		if (constant(l) != null && constant(r) != null)
+			return literal(IntValue.of(constant(l).toInt() + constant(r).toInt()));
+		return result(new Add(l, r), null, l, r);
+	}
+
+	@Override
+	public Exp visitBoolLiteral(boolean value) {
+		return literal(BoolValue.of(value));
+	}
+
+	@Override
+	public Exp visitEq(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		if (constant(l) != null && constant(r) != null)
+			return literal(BoolValue.of(constant(l).equals(constant(r))));
+		return result(new Eq(l, r), null, l, r);
+	}
+
+	@Override
+	public Exp visitFst(Exp exp) {
+		var e = exp(exp);
+		if (constant(e) != null)
+			return fold(new Fst(e), constant(e).toPair().fstVal(), e);
+		// fst (e1, e2) is e1 if e2 cannot fail
+		if (e instanceof PairLit pair && safe.contains(pairs.get(pair)[1]))
+			return pairs.get(pair)[0];
+		return result(new Fst(e), null, e);
+	}
+
+	@Override
+	public Exp visitIntLiteral(int value) {
+		return literal(IntValue.of(value));
+	}
+
+	@Override
+	public Exp visitMinus(Exp exp) {
+		var e = exp(exp);
+		if (constant(e) != null)
+			return literal(IntValue.of(-constant(e).toInt()));
+		return result(new Minus(e), null, e);
+	}
+
+	@Override
+	public Exp visitMul(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		if (constant(l) != null && constant(r) != null)
+			return literal(IntValue.of(constant(l).toInt() * constant(r).toInt()));
+		return result(new Mul(l, r), null, l, r);
+	}
+
+	@Override
+	public Exp visitPairLit(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		var pair = new PairLit(l, r);
+		pairs.put(pair, new Exp[] { l, r });
+		if (constant(l) != null && constant(r) != null)
+			return result(pair, new PairValue(constant(l), constant(r)), l, r);
+		return result(pair, null, l, r);
+	}
+
+	@Override
+	public Exp visitSnd(Exp exp) {
+		var e = exp(exp);
+		if (constant(e) != null)
+			return fold(new Snd(e), constant(e).toPair().sndVal(), e);
+		// snd (e1, e2) is e2 if e1 cannot fail
+		if (e instanceof PairLit pair && safe.contains(pairs.get(pair)[0]))
+			return pairs.get(pair)[1];
+		return result(new Snd(e), null, e);
+	}
+
+	@Override
+	public Exp visitVariable(Variable var) {
+		safe.add(var); // the program is typechecked, hence the variable is declared
+		return var;
+	}
+
+	@Override
+	public Exp visitNot(Exp exp) {
+		var e = exp(exp);
+		if (constant(e) != null)
+			return literal(BoolValue.of(!constant(e).toBool()));
+		return result(new Not(e), null, e);
+	}
+
+	@Override
+	public Exp visitAnd(Exp left, Exp right) {
+		var l = exp(left);
+		var r = exp(right);
+		var lv = constant(l);
+		if (lv != null) // the left operand is evaluated first, and decides if the right one is evaluated
+			return lv.toBool() ? r : l;
+		var rv = constant(r);
+		if (rv != null && rv.toBool()) // e && true is e
+			return l;
+		if (rv != null && safe.contains(l)) // e && false is false if e cannot fail
+			return r;
+		return result(new And(l, r), null, l, r);
+	}
+
+	@Override
+	public Exp visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		if (op == Dict.DictOp.CREATE) {
+			var k = exp(keyExp);
+			var v = exp(valueExp);
+			var dict = new Dict(k, v);
+			if (constant(k) != null && constant(v) != null)
+				return fold(dict, new DictValue().update(constant(k).toInt(), constant(v)), k, v);
+			return result(dict, null, k, v);
+		}
+		var d = exp(dictExp);
+		var k = exp(keyExp);
+		var v = valueExp == null ? null : exp(valueExp);
+		var dict = new Dict(op, d, k, v);
+		if (op == Dict.DictOp.RANGE) // never folded, the literal would have an entry per key; may fail if too large
+			return dict;
+		var dv = (DictValue) constant(d);
+		var kv = constant(k);
+		return switch (op) {
+		case GET -> {
+			var value = dv != null && kv != null ? dv.get(kv.toInt()) : null;
+			if (value != null)
+				yield fold(dict, value, d, k);
+			yield dict; // may fail on a missing key, never safe
+		}
+		case DELETE -> {
+			if (dv != null && kv != null && dv.containsKey(kv.toInt()))
+				yield fold(dict, dv.delete(kv.toInt()), d, k);
+			yield dict; // may fail on a missing key, never safe
+		}
+		default -> {
+			if (dv != null && kv != null && constant(v) != null)
+				yield fold(dict, dv.update(kv.toInt(), constant(v)), d, k, v);
+			yield result(dict, null, d, k, v);
+		}
+		};
+	}
+}
@@ -0,0 +1,204 @@
+package projectLabo.visitors.resolution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import projectLabo.parser.ast.Block;
+import projectLabo.parser.ast.Dict;
+import projectLabo.parser.ast.Exp;
+import projectLabo.parser.ast.Stmt;
+import projectLabo.parser.ast.StmtSeq;
+import projectLabo.parser.ast.Variable;
+import projectLabo.visitors.Visitor;
+
+/*
+ * resolver pass: assigns to every occurrence of a variable its static coordinates (depth, slot),
+ * where depth is the number of levels to walk out from the innermost one and slot is the index
+ * of the variable in the frame of its level; the coordinates are used by 'FrameEnvironment'
+ *
+ * the pass never fails: undeclared variables are left unresolved and redeclarations get
+ * the slot of the previous declaration, so that the errors are raised by the environment
+ * exactly where the map-based environment would have raised them
+ */
+public class Resolve implements Visitor<Void> {
+
+	private final ArrayList<HashMap<String, Integer>> levels = new ArrayList<>(); // innermost level is the last one
+
+	public Resolve() {
+		enterLevel();
+	}
+
+	private void enterLevel() {
+		levels.add(new HashMap<>());
+	}
+
+	private void exitLevel() {
+		levels.remove(levels.size() - 1);
+	}
+
+	// declares 'var' in the innermost level; also used to resume the resolution of a program after its first statements
+	public void declare(Variable var) {
+		var level = levels.get(levels.size() - 1);
+		var slot = level.get(var.name());
+		if (slot == null) {
+			slot = level.size();
+			level.put(var.name(), slot);
+		}
+		var.resolve(0, slot);
+	}
+
+	// resolves 'var' starting from the innermost level
+	private void use(Variable var) {
+		for (var depth = 0; depth < levels.size(); depth++) {
+			var slot = levels.get(levels.size() - 1 - depth).get(var.name());
+			if (slot != null) {
+				var.resolve(depth, slot);
+				return;
+			}
+		}
+		var.resolve(-1, -1);
+	}
+
+	// programs and sequences of statements
+
+	@Override
+	public Void visitLangProg(StmtSeq stmtSeq) {
+		stmtSeq.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			stmt.accept(this);
+		return null;
+	}
+
+	// statements
+
+	@Override
+	public Void visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
+		exp.accept(this);
+		thenBlock.accept(this);
+		if (elseBlock != null)
+			elseBlock.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Exp exp) {
+		exp.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Variable var, Exp exp) {
+		exp.accept(this); // the initialization expression cannot see the declared variable
+		declare(var);
+		return null;
+	}
+
+	@Override
+	public Void visitBlock(StmtSeq stmtSeq) {
+		enterLevel();
+		stmtSeq.accept(this);
+		exitLevel();
+		return null;
+	}
+
+	@Override
+	public Void visitAssignStmt(Variable var, Exp exp) {
+		use(var);
+		exp.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitForStmt(Variable var, Exp exp, Block forBlock) {
+		exp.accept(this);
+		enterLevel(); // level of the loop variable, as in the dynamic semantics
+		declare(var);
+		forBlock.accept(this);
+		exitLevel();
+		return null;
+	}
+
+	// expressions
+
+	private Void visitBinOp(Exp left, Exp right) {
+		left.accept(this);
+		right.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitAdd(Exp left, Exp right) {
+		return visitBinOp(left, right);
+	}
+
+	@Override
+	public Void visitBoolLiteral(boolean value) {
+		return null;
+	}
+
+	@Override
+	public Void visitEq(Exp left, Exp right) {
+		return visitBinOp(left, right);
+	}
+
+	@Override
+	public Void visitFst(Exp exp) {
+		return exp.accept(this);
+	}
+
+	@Override
+	public Void visitIntLiteral(int value) {
+		return null;
+	}
+
+	@Override
+	public Void visitMinus(Exp exp) {
+		return exp.accept(this);
+	}
+
+	@Override
+	public Void visitMul(Exp left, Exp right) {
+		return visitBinOp(left, right);
+	}
+
+	@Override
+	public Void visitPairLit(Exp left, Exp right) {
+		return visitBinOp(left, right);
+	}
+
+	@Override
+	public Void visitSnd(Exp exp) {
+		return exp.accept(this);
+	}
+
+	@Override
+	public Void visitVariable(Variable var) {
+		use(var);
+		return null;
+	}
+
+	@Override
+	public Void visitNot(Exp exp) {
+		return exp.accept(this);
+	}
+
+	@Override
+	public Void visitAnd(Exp left, Exp right) {
+		return visitBinOp(left, right);
+	}
+
+	@Override
+	public Void visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp) {
+		if (dictExp != null)
+			dictExp.accept(this);
+		keyExp.accept(this);
+		if (valueExp != null)
+			valueExp.accept(this);
+		return null;
+	}
+}
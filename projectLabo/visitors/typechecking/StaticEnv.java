@@ -2,5 +2,6 @@ package projectLabo.visitors.typechecking;
 
 import projectLabo.environments.Environment;
 
+// indexed by the ids of the variables, so the typechecker does not depend on the static coordinates of the resolver
 public class StaticEnv extends Environment<Type> {
 }
@@ -1,5 +1,8 @@
 package projectLabo.visitors.typechecking;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
 import projectLabo.environments.EnvironmentException;
 import projectLabo.parser.ast.Block;
 import projectLabo.parser.ast.Dict;
@@ -13,11 +16,72 @@ import static projectLabo.visitors.typechecking.AtomicType.*;
 public class Typecheck implements Visitor<Type> {
 
 	private final StaticEnv env = new StaticEnv();
+	private IdentityHashMap<Exp, Type> types; // static type of every typechecked expression, null if not recorded
+
+	public Typecheck() {
+		this(true);
+	}
+
+	// if 'recordTypes' is false the program is only checked, and typeOf always returns null
+	public Typecheck(boolean recordTypes) {
+		types = recordTypes ? new IdentityHashMap<>() : null;
+	}
+
+	// the types of the expressions are recorded in 'types', which may already contain those of other parts of the program
+	public Typecheck(IdentityHashMap<Exp, Type> types) {
+		this.types = requireNonNull(types);
+	}
+
+	// typechecks 'exp' and records its type
+	private Type check(Exp exp) {
+		var type = exp.accept(this);
+		if (types != null)
+			types.put(exp, type);
+		return type;
+	}
+
+	// returns the static type computed for 'exp', null if 'exp' has not been typechecked
+	public Type typeOf(Exp exp) {
+		return types == null ? null : types.get(exp);
+	}
+
+	/*
+	 * typechecks a top-level statement of a program in the current environment; with 'declare'
+	 * and 'lookup' it allows typechecking again only the statements of a program that changed
+	 */
+	public void checkStmt(Stmt stmt) {
+		try {
+			stmt.accept(this);
+		} catch (EnvironmentException e) { // undeclared variable
+			throw new TypecheckerException(e);
+		}
+	}
+
+	// as checkStmt, but the types of the expressions of 'stmt' are recorded in 'stmtTypes'
+	public void checkStmt(Stmt stmt, IdentityHashMap<Exp, Type> stmtTypes) {
+		var programTypes = types;
+		types = requireNonNull(stmtTypes);
+		try {
+			checkStmt(stmt);
+		} finally {
+			types = programTypes;
+		}
+	}
+
+	// declares 'var' with type 'type' in the current environment, as a correct 'var' statement would do
+	public void declare(Variable var, Type type) {
+		env.dec(var, type);
+	}
+
+	// the type of 'var' in the current environment
+	public Type lookup(Variable var) {
+		return env.lookup(var);
+	}
 
 	// useful to typecheck binary operations where operands must have the same type
 	private void checkBinOp(Exp left, Exp right, Type type) {
-		type.checkEqual(left.accept(this));
-		type.checkEqual(right.accept(this));
+		type.checkEqual(check(left));
+		type.checkEqual(check(right));
 	}
 
 	// static semantics for programs; no value returned by the visitor
@@ -36,14 +100,9 @@ public class Typecheck implements Visitor<Type> {
 	// no value returned by the visitor
 
 	@Override
-	public Type visitEmptyStmtSeq() {
-		return null;
-	}
-
-	@Override
-	public Type visitNonEmptyStmtSeq(Stmt first, StmtSeq rest) {
-		first.accept(this);
-		rest.accept(this);
+	public Type visitStmtList(List<Stmt> stmts) {
+		for (var stmt : stmts)
+			stmt.accept(this);
 		return null;
 	}
 	
@@ -51,7 +110,7 @@ public class Typecheck implements Visitor<Type> {
 
 	@Override
 	public Type visitIfStmt(Exp exp, Block thenBlock, Block elseBlock) {
-		BOOL.checkEqual(exp.accept(this));
+		BOOL.checkEqual(check(exp));
 		thenBlock.accept(this);
 		if (elseBlock != null)
 			elseBlock.accept(this);
@@ -60,13 +119,13 @@ public class Typecheck implements Visitor<Type> {
 	
 	@Override
 	public Type visitPrintStmt(Exp exp) {
-		exp.accept(this);
+		check(exp);
 		return null;
 	}
 
 	@Override
 	public Type visitVarStmt(Variable var, Exp exp) {
-		env.dec(var, exp.accept(this));
+		env.dec(var, check(exp));
 		return null;
 	}
 
@@ -93,13 +152,13 @@ public class Typecheck implements Visitor<Type> {
 
 	@Override
 	public AtomicType visitEq(Exp left, Exp right) {
-		left.accept(this).checkEqual(right.accept(this));
+		check(left).checkEqual(check(right));
 		return BOOL;
 	}
 
 	@Override
 	public Type visitFst(Exp exp) {
-		return exp.accept(this).toPairType().fstType();
+		return check(exp).toPairType().fstType();
 	}
 
 	@Override
@@ -109,7 +168,7 @@ public class Typecheck implements Visitor<Type> {
 
 	@Override
 	public AtomicType visitMinus(Exp exp) {
-		INT.checkEqual(exp.accept(this));
+		INT.checkEqual(check(exp));
 		return INT;
 	}
 	
@@ -121,12 +180,12 @@ public class Typecheck implements Visitor<Type> {
 
 	@Override
 	public PairType visitPairLit(Exp left, Exp right) {
-		return new PairType(left.accept(this), right.accept(this));
+		return new PairType(check(left), check(right));
 	}
 
 	@Override
 	public Type visitSnd(Exp exp) {
-		return exp.accept(this).toPairType().sndType();
+		return check(exp).toPairType().sndType();
 	}
 	
 	@Override
@@ -136,22 +195,22 @@ public class Typecheck implements Visitor<Type> {
 
 	@Override
 	public AtomicType visitNot(Exp exp) {
-		BOOL.checkEqual(exp.accept(this)); // Verifico che sia un booleano e lo ritorno
+		BOOL.checkEqual(check(exp)); // Verifico che sia un booleano e lo ritorno
 		return BOOL;
 	}
 
 	@Override
 	public AtomicType visitAnd(Exp left, Exp right) {
 		// Entrambi devono avere lo stesso tipo, bool
-		BOOL.checkEqual(left.accept(this));
-		BOOL.checkEqual(right.accept(this));
+		BOOL.checkEqual(check(left));
+		BOOL.checkEqual(check(right));
 		return BOOL;
 	}
 
 	@Override
 	public Type visitAssignStmt(Variable var, Exp exp) {
 		Type expected = env.lookup(var); // Tipo atteso se già dichiarato precedentemente
-		Type actual = exp.accept(this); // Tipo effettivo dell’espressione
+		Type actual = check(exp); // Tipo effettivo dell’espressione
 		expected.checkEqual(actual);   // Controllo dei due tipi
 		return null;
 	}
@@ -161,7 +220,7 @@ public class Typecheck implements Visitor<Type> {
 	@Override
 	public Type visitForStmt(Variable var, Exp exp, Block forBlock){ // Visitor per Ciclo For
 		
-		Type expType = exp.accept(this);
+		Type expType = check(exp);
 		if(!(expType instanceof DictType)){// Verifico che exp sia di tipo Dict
 			throw new TypecheckerException("Found " + expType +" , expected DICT");
 		} 
@@ -181,16 +240,21 @@ public class Typecheck implements Visitor<Type> {
 	@Override
 	public Type visitDict(Dict.DictOp op, Exp dictExp, Exp keyExp, Exp valueExp){ // Visitor per Tipo Dictionary
 	
-		INT.checkEqual(keyExp.accept(this)); // chiave deve essere INT
+		if(op == Dict.DictOp.RANGE){ // [low..high : value], gli estremi devono essere INT
+			INT.checkEqual(check(dictExp));
+			INT.checkEqual(check(keyExp));
+			return new DictType(INT, check(valueExp));
+		}
+		INT.checkEqual(check(keyExp)); // chiave deve essere INT
 		if(op == Dict.DictOp.CREATE){
-			Type valueType = valueExp.accept(this);
+			Type valueType = check(valueExp);
 			return new DictType(INT, valueType);
 		}
 		// Per le altre operazioni (GET, UPDATE, DELETE) serve un dizionario su cui operare
 		if (dictExp == null)
 			throw new TypecheckerException("dict expression is null for op: " + op);
 
-		Type dictType = dictExp.accept(this); // Verifico che dictExp sia di tipo DictType
+		Type dictType = check(dictExp); // Verifico che dictExp sia di tipo DictType
 		if (!(dictType instanceof DictType)){
 			throw new TypecheckerException("Found " + dictType +" , expected DICT");
 		}
@@ -205,7 +269,7 @@ public class Typecheck implements Visitor<Type> {
 				return dict;
 						}
 			case UPDATE -> {
-				Type valueType = valueExp.accept(this);
+				Type valueType = check(valueExp);
 				dict.getValueType().checkEqual(valueType);
 				return dict;
 						}
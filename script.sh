@@ -149,3 +149,80 @@ echo "${bold}Starting Custom tests...${reset}"
         $start -ntc -i "$customTestDir/prog0$i.txt"
     done
     echo
+
+## Options tests
+## the options must not change the output of the programs, which is compared with the one of
+## the tests without options; two programs are generated to get past the sizes below which the
+## options have no effect: dictionaries with 4096 entries for -par, 1MB of source for -parlex
+echo
+echo "${bold}Starting Options tests...${reset}"
+
+    ## with a single thread in the common pool -par and -parlex fall back to the sequential code
+    startOptions="java -Djava.util.concurrent.ForkJoinPool.common.parallelism=2 -cp bin projectLabo.Main"
+    optionsDir=$(mktemp -d)
+
+    cat > "$optionsDir/dict.txt" <<'PROG'
+var d = [1..10000 : 3];
+d = d[5000 : 4];
+d = d[20000 : 5];
+var s = [0 : 0];
+for (var e of d) { var x = fst e * snd e; if (x == 20000) { print e } else { if (snd e == 5) { print x } } };
+for (var e of d) { s = s[fst e : snd e + 1] };
+print s[5000];
+print d[9999]
+PROG
+    awk 'BEGIN { for (i = 1; i < 150000; i++) print "print " i ";"; print "print [1..3 : true]" }' > "$optionsDir/large.txt"
+
+    ## runs $1, with -ntc if $2 is -ntc, with the options $3.. and without; stdout and stderr are
+    ## compared separately since -watch flushes stdout after the errors, and is stopped by timeout
+    checkOptions() {
+        local inputFile=$1 ntc=$2
+        shift 2
+        $start $ntc -i "$inputFile" > "$optionsDir/expected.out" 2> "$optionsDir/expected.err"
+        if [[ " $* " == *" -watch "* ]]; then
+            timeout 3 $startOptions $ntc "$@" -i "$inputFile" > "$optionsDir/actual.out" 2> "$optionsDir/actual.err"
+        else
+            $startOptions $ntc "$@" -i "$inputFile" > "$optionsDir/actual.out" 2> "$optionsDir/actual.err"
+        fi
+        grep -v "^Hash-consing\|^Watch:" "$optionsDir/actual.err" > "$optionsDir/filtered.err"
+        if cmp -s "$optionsDir/expected.out" "$optionsDir/actual.out" && cmp -s "$optionsDir/expected.err" "$optionsDir/filtered.err"; then
+            echo "OK: $ntc $* $inputFile"
+        else
+            echo "${bold}FAILED: $ntc $* $inputFile${reset}"
+            diff "$optionsDir/expected.out" "$optionsDir/actual.out" | head -5
+            diff "$optionsDir/expected.err" "$optionsDir/filtered.err" | head -5
+        fi
+    }
+
+    for options in "-par" "-hc" "-offheap 16" "-compact" "-watch" "-parlex" "-par -offheap 16 -hc"
+    do
+        echo
+        echo "${green}With $options${reset}"
+        for inputFile in "$successTestDir"/prog0*.txt "$customTestDir"/prog0*.txt "$optionsDir/dict.txt" "$optionsDir/large.txt"
+        do
+            checkOptions "$inputFile" "" $options
+            checkOptions "$inputFile" -ntc $options
+        done
+    done
+
+    ## -watch runs the program again when the file changes
+    echo
+    echo "${green}With -watch, after a change of the program${reset}"
+    cp "$successTestDir/prog01.txt" "$optionsDir/watched.txt"
+    $start -i "$optionsDir/watched.txt" > "$optionsDir/expected.out"
+    printf ';\nprint 42' >> "$optionsDir/watched.txt"
+    $start -i "$optionsDir/watched.txt" >> "$optionsDir/expected.out"
+    cp "$successTestDir/prog01.txt" "$optionsDir/watched.txt"
+    timeout 6 $start -watch -i "$optionsDir/watched.txt" > "$optionsDir/actual.out" 2> /dev/null &
+    sleep 3
+    printf ';\nprint 42' >> "$optionsDir/watched.txt"
+    wait
+    if cmp -s "$optionsDir/expected.out" "$optionsDir/actual.out"; then
+        echo "OK: -watch $optionsDir/watched.txt"
+    else
+        echo "${bold}FAILED: -watch $optionsDir/watched.txt${reset}"
+        diff "$optionsDir/expected.out" "$optionsDir/actual.out" | head -5
+    fi
+
+    rm -r "$optionsDir"
+    echo
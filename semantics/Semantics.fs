@@ -117,6 +117,7 @@ type exp =
     | DictDel of exp * exp
     | DictGet of exp * exp
     | DictPut of exp * exp * exp
+    | DictRange of exp * exp * exp
 
 (* AST of statements and sequence of statements, mutually recursive *)
 
@@ -227,6 +228,10 @@ let rec typecheckExp (env: staticEnv) =
         typecheckHasType IntType env exp2 |> ignore
         typecheckHasType valueType env exp3 |> ignore
         dictType
+    | DictRange (exp1, exp2, exp3) ->
+        typecheckHasType IntType env exp1 |> ignore
+        typecheckHasType IntType env exp2 |> ignore
+        DictType(typecheckExp env exp3)
 
 (* auxiliary functions for typeCheckExp *)
 
@@ -327,6 +332,8 @@ exception ExpectingDynTypeError of string (* dynamic conversion error *)
 
 exception MissingKey of int (* dynamic error raised when trying to get or delete a missing key *)
 
+exception RangeTooLarge of int * int (* dynamic error raised by a range with more than Int32.MaxValue keys *)
+
 let checkKey key map =
     if Map.containsKey key map then
         ()
@@ -432,6 +439,14 @@ let rec evalExp (env: dynamicEnv) =
         let m = evalExp env exp1 |> toMap
         let k = evalExp env exp2 |> toInt
         Map.add k (evalExp env exp3) m |> DictValue
+    | DictRange (exp1, exp2, exp3) -> (* the value is evaluated once and shared by all the keys *)
+        let low = evalExp env exp1
+        let high = evalExp env exp2
+        let v = evalExp env exp3
+        let low, high = toInt low, toInt high (* the bounds are checked after the evaluation of the value *)
+        if int64 high - int64 low >= int64 System.Int32.MaxValue then
+            raise (RangeTooLarge (low, high))
+        List.fold (fun m k -> Map.add k v m) Map.empty [ low..high ] |> DictValue
 
 (* mutually recursive
    executeStmt : dynamicEnv -> stmt -> dynamicEnv